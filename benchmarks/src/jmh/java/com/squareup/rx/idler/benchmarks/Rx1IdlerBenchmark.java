@@ -0,0 +1,185 @@
+package com.squareup.rx.idler.benchmarks;
+
+import com.squareup.rx.idler.IdlerOptions;
+import com.squareup.rx.idler.RxTracking;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.subscriptions.Subscriptions;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Measures the overhead of a wrapped RxJava 1.x scheduler against its raw delegate. The delegate
+ * runs work inline so that only the cost of the wrapper's bookkeeping is being compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class Rx1IdlerBenchmark {
+  private static final Action0 NOOP = new Action0() {
+    @Override public void call() {
+    }
+  };
+
+  @Param({"raw", "wrapped", "striped"})
+  public String mode;
+
+  Scheduler inline;
+  Scheduler discarding;
+
+  @Setup public void setUp() {
+    inline = wrap(new InlineScheduler(true));
+    discarding = wrap(new InlineScheduler(false));
+  }
+
+  private Scheduler wrap(Scheduler delegate) {
+    switch (mode) {
+      case "raw":
+        return delegate;
+      case "wrapped":
+        return RxTracking.wrap(delegate, "Benchmark");
+      case "striped":
+        return RxTracking.wrap(delegate, "Benchmark",
+            new IdlerOptions.Builder().stripedCounter(true).build());
+      default:
+        throw new AssertionError(mode);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Workers {
+    Scheduler.Worker inline;
+    Scheduler.Worker discarding;
+
+    @Setup public void setUp(Rx1IdlerBenchmark benchmark) {
+      inline = benchmark.inline.createWorker();
+      discarding = benchmark.discarding.createWorker();
+    }
+
+    @TearDown public void tearDown() {
+      inline.unsubscribe();
+      discarding.unsubscribe();
+    }
+  }
+
+  /** A worker on a thread which also has one task pending, as a busy producer does. */
+  @State(Scope.Thread)
+  public static class BusyWorkers {
+    Scheduler.Worker inline;
+    Scheduler.Worker discarding;
+
+    @Setup public void setUp(Rx1IdlerBenchmark benchmark) {
+      inline = benchmark.inline.createWorker();
+      discarding = benchmark.discarding.createWorker();
+      discarding.schedule(NOOP);
+    }
+
+    @TearDown public void tearDown() {
+      inline.unsubscribe();
+      discarding.unsubscribe();
+    }
+  }
+
+  @Benchmark public Subscription schedule(Workers workers) {
+    return workers.inline.schedule(NOOP);
+  }
+
+  /**
+   * Schedules from a thread whose earlier work is still pending, so that with striping the
+   * thread's stripe stays non-zero and the shared total is left alone. Run it with several
+   * threads to compare contention with the single counter.
+   */
+  @Benchmark public Subscription scheduleWhileBusy(BusyWorkers workers) {
+    return workers.inline.schedule(NOOP);
+  }
+
+  @Benchmark public Subscription scheduleDelayed(Workers workers) {
+    return workers.inline.schedule(NOOP, 1, SECONDS);
+  }
+
+  @Benchmark public Subscription schedulePeriodically(Workers workers) {
+    Subscription subscription = workers.inline.schedulePeriodically(NOOP, 1, 1, SECONDS);
+    subscription.unsubscribe();
+    return subscription;
+  }
+
+  @Benchmark public Scheduler.Worker workerChurn() {
+    Scheduler.Worker worker = inline.createWorker();
+    worker.schedule(NOOP);
+    worker.unsubscribe();
+    return worker;
+  }
+
+  @Benchmark public Subscription unsubscribeBeforeRun(Workers workers) {
+    Subscription subscription = workers.discarding.schedule(NOOP);
+    subscription.unsubscribe();
+    return subscription;
+  }
+
+  /**
+   * Runs work synchronously, ignoring delays and running periodic work once, or discards it
+   * without running.
+   */
+  static final class InlineScheduler extends Scheduler {
+    final boolean run;
+
+    InlineScheduler(boolean run) {
+      this.run = run;
+    }
+
+    @Override public Worker createWorker() {
+      return new InlineWorker(run);
+    }
+  }
+
+  static final class InlineWorker extends Scheduler.Worker {
+    private final boolean run;
+    private volatile boolean unsubscribed;
+
+    InlineWorker(boolean run) {
+      this.run = run;
+    }
+
+    @Override public Subscription schedule(Action0 action) {
+      if (run) {
+        action.call();
+      }
+      return Subscriptions.unsubscribed();
+    }
+
+    @Override public Subscription schedule(Action0 action, long delayTime, TimeUnit unit) {
+      return schedule(action);
+    }
+
+    @Override
+    public Subscription schedulePeriodically(Action0 action, long initialDelay, long period,
+        TimeUnit unit) {
+      return schedule(action);
+    }
+
+    @Override public void unsubscribe() {
+      unsubscribed = true;
+    }
+
+    @Override public boolean isUnsubscribed() {
+      return unsubscribed;
+    }
+  }
+}
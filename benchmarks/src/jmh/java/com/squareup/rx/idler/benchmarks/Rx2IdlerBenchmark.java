@@ -0,0 +1,197 @@
+package com.squareup.rx.idler.benchmarks;
+
+import com.squareup.rx2.idler.IdlerOptions;
+import com.squareup.rx2.idler.Rx2Tracking;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Measures the overhead of a wrapped RxJava 2.x scheduler against its raw delegate. The delegate
+ * runs work inline so that only the cost of the wrapper's bookkeeping is being compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class Rx2IdlerBenchmark {
+  private static final Runnable NOOP = new Runnable() {
+    @Override public void run() {
+    }
+  };
+
+  @Param({"raw", "wrapped", "striped"})
+  public String mode;
+
+  Scheduler inline;
+  Scheduler discarding;
+
+  @Setup public void setUp() {
+    inline = wrap(new InlineScheduler(true));
+    discarding = wrap(new InlineScheduler(false));
+  }
+
+  private Scheduler wrap(Scheduler delegate) {
+    switch (mode) {
+      case "raw":
+        return delegate;
+      case "wrapped":
+        return Rx2Tracking.wrap(delegate, "Benchmark");
+      case "striped":
+        return Rx2Tracking.wrap(delegate, "Benchmark",
+            new IdlerOptions.Builder().stripedCounter(true).build());
+      default:
+        throw new AssertionError(mode);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Workers {
+    Scheduler.Worker inline;
+    Scheduler.Worker discarding;
+
+    @Setup public void setUp(Rx2IdlerBenchmark benchmark) {
+      inline = benchmark.inline.createWorker();
+      discarding = benchmark.discarding.createWorker();
+    }
+
+    @TearDown public void tearDown() {
+      inline.dispose();
+      discarding.dispose();
+    }
+  }
+
+  /** A worker on a thread which also has one task pending, as a busy producer does. */
+  @State(Scope.Thread)
+  public static class BusyWorkers {
+    Scheduler.Worker inline;
+    Scheduler.Worker discarding;
+
+    @Setup public void setUp(Rx2IdlerBenchmark benchmark) {
+      inline = benchmark.inline.createWorker();
+      discarding = benchmark.discarding.createWorker();
+      discarding.schedule(NOOP);
+    }
+
+    @TearDown public void tearDown() {
+      inline.dispose();
+      discarding.dispose();
+    }
+  }
+
+  @Benchmark public Disposable schedule(Workers workers) {
+    return workers.inline.schedule(NOOP);
+  }
+
+  /**
+   * Schedules from a thread whose earlier work is still pending, so that with striping the
+   * thread's stripe stays non-zero and the shared total is left alone. Run it with several
+   * threads to compare contention with the single counter.
+   */
+  @Benchmark public Disposable scheduleWhileBusy(BusyWorkers workers) {
+    return workers.inline.schedule(NOOP);
+  }
+
+  @Benchmark public Disposable scheduleDelayed(Workers workers) {
+    return workers.inline.schedule(NOOP, 1, SECONDS);
+  }
+
+  @Benchmark public Disposable schedulePeriodically(Workers workers) {
+    Disposable disposable = workers.inline.schedulePeriodically(NOOP, 1, 1, SECONDS);
+    disposable.dispose();
+    return disposable;
+  }
+
+  @Benchmark public Disposable scheduleDirect() {
+    return inline.scheduleDirect(NOOP);
+  }
+
+  @Benchmark public Scheduler.Worker workerChurn() {
+    Scheduler.Worker worker = inline.createWorker();
+    worker.schedule(NOOP);
+    worker.dispose();
+    return worker;
+  }
+
+  @Benchmark public Disposable disposeBeforeRun(Workers workers) {
+    Disposable disposable = workers.discarding.schedule(NOOP);
+    disposable.dispose();
+    return disposable;
+  }
+
+  /**
+   * Runs work synchronously, ignoring delays and running periodic work once, or discards it
+   * without running.
+   */
+  static final class InlineScheduler extends Scheduler {
+    final boolean run;
+
+    InlineScheduler(boolean run) {
+      this.run = run;
+    }
+
+    @Override public Worker createWorker() {
+      return new InlineWorker(run);
+    }
+
+    @Override public Disposable scheduleDirect(Runnable action, long delay, TimeUnit unit) {
+      if (run) {
+        action.run();
+      }
+      return Disposables.disposed();
+    }
+
+    @Override
+    public Disposable schedulePeriodicallyDirect(Runnable action, long initialDelay, long period,
+        TimeUnit unit) {
+      return scheduleDirect(action, initialDelay, unit);
+    }
+  }
+
+  static final class InlineWorker extends Scheduler.Worker {
+    private final boolean run;
+    private volatile boolean disposed;
+
+    InlineWorker(boolean run) {
+      this.run = run;
+    }
+
+    @Override public Disposable schedule(Runnable action, long delay, TimeUnit unit) {
+      if (run) {
+        action.run();
+      }
+      return Disposables.disposed();
+    }
+
+    @Override
+    public Disposable schedulePeriodically(Runnable action, long initialDelay, long period,
+        TimeUnit unit) {
+      return schedule(action, initialDelay, unit);
+    }
+
+    @Override public void dispose() {
+      disposed = true;
+    }
+
+    @Override public boolean isDisposed() {
+      return disposed;
+    }
+  }
+}
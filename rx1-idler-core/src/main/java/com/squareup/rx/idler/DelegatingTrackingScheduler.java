@@ -0,0 +1,558 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import rx.Scheduler;
+import rx.Subscription;
+import rx.functions.Action0;
+import rx.internal.schedulers.SchedulerLifecycle;
+import rx.subscriptions.CompositeSubscription;
+import rx.subscriptions.Subscriptions;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@RestrictTo(LIBRARY)
+final class DelegatingTrackingScheduler extends TrackingScheduler implements SchedulerLifecycle {
+  private final Scheduler delegate;
+  private final String name;
+  /**
+   * The busy count, or when {@link #stripes} is used a count which covers every non-zero stripe.
+   * Shared with the other schedulers in {@link #group}, if any.
+   */
+  private final AtomicInteger work;
+  @Nullable private final TrackingGroup group;
+  /**
+   * This scheduler's own busy count when {@link #work} is shared with a group, so that the busy
+   * periods in {@link #metrics}, {@link #inFlight} and {@link #trace} are this scheduler's rather
+   * than the group's. Null when not grouped or when none of those are enabled.
+   */
+  @Nullable private final AtomicInteger ownWork;
+  /** Threads in {@link #awaitIdle}, shared like {@link #work}. */
+  private final IdleWaiters waiters;
+  @Nullable private final StripedCounter stripes;
+  private final long lookAheadNanos;
+  @Nullable private final LookAheadWindow lookAhead;
+  @Nullable private final IdlerMetrics metrics;
+  @Nullable private final IdlerLatency latency;
+  @Nullable private final InFlightRegistry inFlight;
+  @Nullable private final IdleNotifier idleNotifier;
+  @Nullable private final VirtualClock clock;
+  @Nullable private final TraceRecorder trace;
+  private final double timeCompression;
+  @Nullable private final BusyPolicy busyPolicy;
+  /** The time from which {@link #now} runs faster under {@link #timeCompression}. */
+  private final long compressedSince;
+  /** Set from the test thread and read by whichever thread takes the count to zero. */
+  @Nullable private volatile IdleListener listener;
+  private final IdleListeners listeners = new IdleListeners();
+
+  DelegatingTrackingScheduler(Scheduler delegate, String name, IdlerOptions options) {
+    this.delegate = delegate;
+    this.name = name;
+    this.group = options.group;
+    this.work = group != null ? group.work : new AtomicInteger();
+    this.waiters = group != null ? group.waiters : new IdleWaiters();
+    this.stripes = options.stripedCounter ? new StripedCounter(work) : null;
+    this.clock = options.virtualTime ? new VirtualClock(delegate) : null;
+    this.timeCompression = options.timeCompression;
+    this.busyPolicy = options.busyPolicy;
+    this.compressedSince = uncompressedNow();
+    this.lookAheadNanos = clock != null ? 0L : options.lookAheadNanos;
+    this.lookAhead = lookAheadNanos > 0L ? new LookAheadWindow(delegate, lookAheadNanos) : null;
+    this.metrics = options.metrics ? new IdlerMetrics() : null;
+    this.latency = options.latencyHistograms ? new IdlerLatency(options.threadCpuTime) : null;
+    this.inFlight = options.inFlightCapacity > 0
+        ? new InFlightRegistry(name, options.inFlightCapacity, options.stackSampleRate,
+            options.dumpInFlightAfterNanos)
+        : null;
+    this.trace = options.traceCapacity > 0 ? new TraceRecorder(name, options.traceCapacity) : null;
+    this.ownWork = group != null && (metrics != null || inFlight != null || trace != null)
+        ? new AtomicInteger()
+        : null;
+    this.idleNotifier = options.coalesceIdleNanos >= 0L
+        ? new IdleNotifier(delegate, options.coalesceIdleNanos, this)
+        : null;
+  }
+
+  @Override public String getName() {
+    return name;
+  }
+
+  @Override public boolean isIdleNow() {
+    boolean idle = work.get() == 0;
+    if (idle && clock != null && clock.advanceTimeToNext()) {
+      // Skipped ahead to pending delayed work, which counts as busy until it has run.
+      idle = work.get() == 0;
+    }
+    if (inFlight != null && (ownWork != null ? ownWork.get() != 0 : !idle)) {
+      inFlight.checkBusy();
+    }
+    return idle;
+  }
+
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @Override public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+    if (unit == null) throw new NullPointerException("unit == null");
+    return waiters.await(work, unit.toNanos(timeout));
+  }
+
+  @Nullable @Override public IdlerMetrics getMetrics() {
+    return metrics;
+  }
+
+  @Nullable @Override public IdlerLatency getLatency() {
+    return latency;
+  }
+
+  @Nullable @Override public String dumpInFlightWork() {
+    return inFlight != null ? inFlight.dump() : null;
+  }
+
+  @Override public void setIdleListener(@Nullable IdleListener listener) {
+    this.listener = listener;
+  }
+
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @Override public void addIdleListener(IdleListener listener) {
+    if (listener == null) throw new NullPointerException("listener == null");
+    listeners.add(listener);
+  }
+
+  @Override public void removeIdleListener(IdleListener listener) {
+    listeners.remove(listener);
+  }
+
+  @Nullable @Override public TrackingGroup getGroup() {
+    return group;
+  }
+
+  @Override public void writeTrace(Writer writer) throws IOException {
+    if (trace == null) {
+      super.writeTrace(writer);
+      return;
+    }
+    trace.write(writer);
+  }
+
+  @Override public void advanceTimeBy(long time, TimeUnit unit) {
+    if (clock == null) {
+      super.advanceTimeBy(time, unit);
+      return;
+    }
+    clock.advanceBy(compress(unit.toNanos(time)));
+  }
+
+  @Override public boolean advanceTimeToNext() {
+    if (clock == null) {
+      return super.advanceTimeToNext();
+    }
+    return clock.advanceTimeToNext();
+  }
+
+  @Override public long now() {
+    if (clock == null && timeCompression == 1d) {
+      return delegate.now();
+    }
+    return NANOSECONDS.toMillis(nowNanos());
+  }
+
+  /** The time reported by {@link #now}, following the virtual clock and compression if used. */
+  long nowNanos() {
+    long now = uncompressedNow();
+    if (timeCompression == 1d) {
+      return now;
+    }
+    return compressedSince + (long) ((now - compressedSince) * timeCompression);
+  }
+
+  private long uncompressedNow() {
+    return clock != null ? clock.now() : MILLISECONDS.toNanos(delegate.now());
+  }
+
+  /** Scale a delay or period from the caller's time to the delegate's. */
+  long compress(long nanos) {
+    return timeCompression == 1d ? nanos : (long) (nanos / timeCompression);
+  }
+
+  @Override public Worker createWorker() {
+    return new DelegatingWorker(delegate.createWorker());
+  }
+
+  // Schedulers.start() and shutdown() only reach schedulers implementing this internal interface.
+  @Override public void start() {
+    if (delegate instanceof SchedulerLifecycle) {
+      ((SchedulerLifecycle) delegate).start();
+    }
+  }
+
+  @Override public void shutdown() {
+    if (delegate instanceof SchedulerLifecycle) {
+      ((SchedulerLifecycle) delegate).shutdown();
+    }
+  }
+
+  /** Returns the stripe which must be passed to the matching {@link #stopWork(int)} call. */
+  int startWork() {
+    StripedCounter stripes = this.stripes;
+    int stripe = 0;
+    boolean busy;
+    if (stripes != null) {
+      stripe = stripes.stripe();
+      busy = stripes.increment(stripe);
+    } else {
+      busy = work.incrementAndGet() == 1;
+    }
+    AtomicInteger ownWork = this.ownWork;
+    if (ownWork != null ? ownWork.incrementAndGet() == 1 : busy) {
+      if (metrics != null) {
+        metrics.onBusy();
+      }
+      if (inFlight != null) {
+        inFlight.onBusy();
+      }
+      if (trace != null) {
+        trace.record(TraceRecorder.BUSY, 0L, null);
+      }
+    }
+    return stripe;
+  }
+
+  void stopWork(int stripe) {
+    // Record this scheduler's idle first so that a thread woken by the shared count sees it.
+    AtomicInteger ownWork = this.ownWork;
+    if (ownWork != null && ownWork.decrementAndGet() == 0) {
+      recordIdle();
+    }
+    StripedCounter stripes = this.stripes;
+    boolean idle = stripes != null ? stripes.decrement(stripe) : work.decrementAndGet() == 0;
+    if (idle) {
+      if (ownWork == null) {
+        recordIdle();
+      }
+      waiters.signal();
+      if (idleNotifier != null) {
+        idleNotifier.onIdle();
+      } else {
+        notifyIdle();
+      }
+    }
+  }
+
+  private void recordIdle() {
+    if (metrics != null) {
+      metrics.onIdle();
+    }
+    if (trace != null) {
+      trace.record(TraceRecorder.IDLE, 0L, null);
+    }
+  }
+
+  /** Called by {@link #idleNotifier} to report a transition which may since have been undone. */
+  void notifyIfIdle() {
+    if (work.get() == 0) {
+      notifyIdle();
+    }
+  }
+
+  private void notifyIdle() {
+    IdleListener listener = this.listener;
+    if (listener != null) {
+      listener.onIdle();
+    }
+    listeners.notifyIdle();
+    if (group != null) {
+      group.notifyIdle();
+    }
+  }
+
+  ScheduledWork createWork(Action0 action, long delayNanos, long period,
+      @Nullable CompositeSubscription parent) {
+    if (action instanceof ScheduledWork) {
+      // Unwrap any re-scheduled work. We want each scheduler to get its own state machine.
+      action = ((ScheduledWork) action).delegate;
+    }
+    if (metrics != null) {
+      metrics.onScheduled(delayNanos, period);
+    }
+    BusyPolicy busyPolicy = this.busyPolicy;
+    BusyPolicy.Busy busy = busyPolicy != null
+        ? busyPolicy.decide(action, delayNanos, period)
+        : BusyPolicy.Busy.COUNT;
+    // Work due within the look-ahead window counts as busy from now, as does immediate work.
+    boolean immediate = busy == BusyPolicy.Busy.COUNT && delayNanos <= lookAheadNanos;
+    int stripe = immediate ? startWork() : 0;
+    int startingState = immediate ? ScheduledWork.STATE_SCHEDULED : ScheduledWork.STATE_IDLE;
+    ScheduledWork work = new ScheduledWork(action, startingState, stripe,
+        busy != BusyPolicy.Busy.IGNORE, period > 0L, parent);
+    if (inFlight != null) {
+      work.registration = inFlight.add(work);
+    }
+    if (trace != null) {
+      work.traceId = trace.schedule(action);
+    }
+    work.isQueued = delayNanos <= 0L;
+    if (latency != null) {
+      work.dueNanos = System.nanoTime() + delayNanos;
+      work.periodNanos = period;
+    }
+    LookAheadWindow lookAhead = this.lookAhead;
+    if (!immediate && lookAhead != null && period <= 0L && busy == BusyPolicy.Busy.COUNT) {
+      lookAhead.add(work, delayNanos);
+    }
+    return work;
+  }
+
+  final class DelegatingWorker extends Worker {
+    private final Worker delegateWorker;
+    final CompositeSubscription subscriptions;
+
+    DelegatingWorker(Worker delegateWorker) {
+      this.delegateWorker = delegateWorker;
+      this.subscriptions = new CompositeSubscription(delegateWorker);
+    }
+
+    @Override public Subscription schedule(Action0 action) {
+      if (subscriptions.isUnsubscribed()) {
+        return Subscriptions.unsubscribed();
+      }
+      ScheduledWork work = createWork(action, 0L, 0L, subscriptions);
+      subscriptions.add(work);
+      work.setFuture(delegateWorker.schedule(work));
+      return work;
+    }
+
+    @Override public Subscription schedule(Action0 action, long delayTime, TimeUnit unit) {
+      if (subscriptions.isUnsubscribed()) {
+        return Subscriptions.unsubscribed();
+      }
+      long delayNanos = compress(unit.toNanos(delayTime));
+      ScheduledWork work = createWork(action, delayNanos, 0L, subscriptions);
+      subscriptions.add(work);
+      if (clock != null && delayNanos > 0L) {
+        work.setFuture(clock.add(work, delayNanos, 0L, delegateWorker));
+      } else {
+        work.setFuture(delegateWorker.schedule(work, delayNanos, NANOSECONDS));
+      }
+      return work;
+    }
+
+    @Override
+    public Subscription schedulePeriodically(Action0 action, long initialDelay, long period,
+        TimeUnit unit) {
+      if (subscriptions.isUnsubscribed()) {
+        return Subscriptions.unsubscribed();
+      }
+      long initialDelayNanos = compress(unit.toNanos(initialDelay));
+      long periodNanos = compress(unit.toNanos(period));
+      ScheduledWork work = createWork(action, initialDelayNanos, periodNanos, subscriptions);
+      subscriptions.add(work);
+      if (clock != null) {
+        work.setFuture(clock.add(work, initialDelayNanos, periodNanos, delegateWorker));
+      } else {
+        work.setFuture(delegateWorker.schedulePeriodically(work, initialDelayNanos, periodNanos,
+            NANOSECONDS));
+      }
+      return work;
+    }
+
+    @Override public long now() {
+      if (clock == null && timeCompression == 1d) {
+        return delegateWorker.now();
+      }
+      return NANOSECONDS.toMillis(nowNanos());
+    }
+
+    @Override public void unsubscribe() {
+      subscriptions.unsubscribe();
+    }
+
+    @Override public boolean isUnsubscribed() {
+      return subscriptions.isUnsubscribed();
+    }
+  }
+
+  /**
+   * The state machine for a single task. It is also the Subscription returned for the task so
+   * that scheduling allocates only this object on top of the delegate's own.
+   */
+  final class ScheduledWork extends AtomicInteger implements Action0, Subscription {
+    static final int STATE_IDLE = 0; // --> STATE_RUNNING, STATE_UNSUBSCRIBED
+    static final int STATE_SCHEDULED = 1; // --> STATE_RUNNING, STATE_UNSUBSCRIBED
+    static final int STATE_RUNNING = 2; // --> STATE_IDLE, STATE_COMPLETED, STATE_UNSUBSCRIBED
+    static final int STATE_COMPLETED = 3; // --> STATE_UNSUBSCRIBED
+    static final int STATE_UNSUBSCRIBED = 4;
+
+    final Action0 delegate;
+    /** False for work which a {@link BusyPolicy} ignores, which never calls {@link #startWork}. */
+    private final boolean isCounted;
+    final boolean isPeriodic;
+    /** The stripe of the {@link #startWork()} made when scheduled or on entering the window. */
+    private int stripe;
+    /** The worker's composite which holds this work until it completes or is unsubscribed. */
+    @Nullable private final CompositeSubscription parent;
+    /** This work's entry in {@link #inFlight}, if tracked. */
+    @Nullable InFlightRegistry.Entry registration;
+    /** This work's id in {@link #trace}, if recorded. */
+    long traceId;
+    /** When this work, or its next periodic run, is due by {@link System#nanoTime()}. */
+    long dueNanos;
+    long periodNanos;
+    /**
+     * Whether this work is due rather than waiting on a delay while it waits to run, for
+     * {@link IdlerMetrics}. Written before each change of state to idle or scheduled.
+     */
+    boolean isQueued;
+    /** The delegate's Subscription for this work, or null until it has been scheduled. */
+    @Nullable private volatile Subscription future;
+
+    ScheduledWork(Action0 delegate, int startingState, int stripe, boolean isCounted,
+        boolean isPeriodic, @Nullable CompositeSubscription parent) {
+      super(startingState);
+      this.stripe = stripe;
+      this.delegate = delegate;
+      this.isCounted = isCounted;
+      this.isPeriodic = isPeriodic;
+      this.parent = parent;
+    }
+
+    @Override public void call() {
+      for (;;) {
+        int state = get();
+        switch (state) {
+          case STATE_IDLE:
+          case STATE_SCHEDULED:
+            if (compareAndSet(state, STATE_RUNNING)) {
+              if (metrics != null) {
+                metrics.onRun(isQueued);
+              }
+              isQueued = false;
+              int stripe = !isCounted ? 0 : state == STATE_IDLE ? startWork() : this.stripe;
+              if (trace != null) {
+                trace.record(TraceRecorder.START, traceId, delegate);
+              }
+              long startNanos = 0L;
+              long startCpuNanos = 0L;
+              if (latency != null) {
+                startNanos = System.nanoTime();
+                startCpuNanos = latency.onStart(dueNanos, startNanos);
+              }
+              try {
+                delegate.call();
+              } finally {
+                if (trace != null) {
+                  trace.record(TraceRecorder.END, traceId, delegate);
+                }
+                if (latency != null) {
+                  latency.onEnd(startNanos, startCpuNanos);
+                  dueNanos += periodNanos;
+                }
+                if (metrics != null) {
+                  metrics.onRunEnd(isPeriodic);
+                }
+                // Change state with a CAS to ensure we don't overwrite an unsubscribed state.
+                if (compareAndSet(STATE_RUNNING, isPeriodic ? STATE_IDLE : STATE_COMPLETED)) {
+                  if (!isPeriodic) {
+                    untrack();
+                  }
+                } else if (metrics != null && isPeriodic) {
+                  metrics.onPeriodicRunUnsubscribed();
+                }
+                if (isCounted) {
+                  stopWork(stripe);
+                }
+              }
+              return; // CAS success, we're done.
+            }
+            break; // CAS failed, retry.
+
+          case STATE_RUNNING:
+            throw new IllegalStateException("Already running");
+
+          case STATE_COMPLETED:
+            throw new IllegalStateException("Already completed");
+
+          case STATE_UNSUBSCRIBED:
+            return; // Nothing to do.
+        }
+      }
+    }
+
+    @Override public void unsubscribe() {
+      for (;;) {
+        int state = get();
+        if (state == STATE_UNSUBSCRIBED) {
+          return; // Nothing to do.
+        } else if (compareAndSet(state, STATE_UNSUBSCRIBED)) {
+          if (state == STATE_COMPLETED) {
+            // Already untracked, and both startWork() and stopWork() have been called. This is
+            // usually the worker's composite, which unsubscribes work as it removes it.
+            return;
+          }
+          // If idle, startWork() hasn't been called so we don't need a matching stopWork().
+          // If running, startWork() was called but the try/finally ensures a stopWork() call.
+          if (state == STATE_SCHEDULED) {
+            stopWork(stripe); // Scheduled but not running means we called startWork().
+          }
+          if (metrics != null) {
+            metrics.onUnsubscribed(state <= STATE_SCHEDULED, isQueued, isPeriodic);
+          }
+          if (trace != null) {
+            trace.record(TraceRecorder.UNSUBSCRIBE, traceId, delegate);
+          }
+          untrack();
+          Subscription future = this.future;
+          if (future != null) {
+            future.unsubscribe();
+          }
+          return;
+        }
+      }
+    }
+
+    @Override public boolean isUnsubscribed() {
+      return get() == STATE_UNSUBSCRIBED;
+    }
+
+    /** Mark idle delayed work as busy now that it is due within the look-ahead window. */
+    void enterWindow() {
+      if (!isCounted) {
+        return; // Ignored by the busy policy, even once released by the virtual clock.
+      }
+      if (get() != STATE_IDLE) {
+        return; // Already running or unsubscribed.
+      }
+      // Count the work before it becomes visible as scheduled so a racing unsubscribe can undo it.
+      int stripe = startWork();
+      this.stripe = stripe;
+      if (!compareAndSet(STATE_IDLE, STATE_SCHEDULED)) {
+        stopWork(stripe);
+      }
+    }
+
+    /** Set the delegate's Subscription once scheduled, unsubscribing it if already unsubscribed. */
+    void setFuture(Subscription future) {
+      this.future = future;
+      if (get() == STATE_UNSUBSCRIBED) {
+        future.unsubscribe();
+      }
+    }
+
+    /** Remove this from the worker so that it only retains work which is still in flight. */
+    private void untrack() {
+      InFlightRegistry.Entry registration = this.registration;
+      if (registration != null) {
+        inFlight.remove(registration);
+      }
+      CompositeSubscription parent = this.parent;
+      if (parent != null) {
+        parent.remove(this);
+      }
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.RestrictTo;
+import java.util.Arrays;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * Listeners added alongside the one set with {@code setIdleListener}. Changes copy the array and
+ * publish it through a volatile field, so that a transition to idle reads the field once and
+ * iterates a snapshot without locking. With no listeners added that is a read of an empty array.
+ */
+@RestrictTo(LIBRARY)
+final class IdleListeners {
+  private static final IdleListener[] EMPTY = new IdleListener[0];
+
+  private volatile IdleListener[] listeners = EMPTY;
+
+  synchronized void add(IdleListener listener) {
+    IdleListener[] listeners = this.listeners;
+    IdleListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+    updated[listeners.length] = listener;
+    this.listeners = updated;
+  }
+
+  /** Removes one registration of {@code listener}, if present. */
+  synchronized void remove(IdleListener listener) {
+    IdleListener[] listeners = this.listeners;
+    for (int i = 0; i < listeners.length; i++) {
+      if (listeners[i] == listener) {
+        IdleListener[] updated = new IdleListener[listeners.length - 1];
+        System.arraycopy(listeners, 0, updated, 0, i);
+        System.arraycopy(listeners, i + 1, updated, i, updated.length - i);
+        this.listeners = updated;
+        return;
+      }
+    }
+  }
+
+  void notifyIdle() {
+    for (IdleListener listener : listeners) {
+      listener.onIdle();
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.RestrictTo;
+import java.util.concurrent.atomic.AtomicBoolean;
+import rx.Scheduler;
+import rx.functions.Action0;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Reports transitions to idle from a task on a delegate worker rather than from the thread which
+ * finished the work. Transitions which happen while a report is pending are folded into it, and
+ * the report is dropped if the scheduler has become busy again by the time it runs.
+ * <p>
+ * A real idle state is never missed: the pending flag is cleared before idleness is re-checked, so
+ * any transition after that check schedules another report.
+ */
+@RestrictTo(LIBRARY)
+final class IdleNotifier implements Action0 {
+  private final Scheduler.Worker worker;
+  private final long delayNanos;
+  private final DelegatingTrackingScheduler scheduler;
+  private final AtomicBoolean pending = new AtomicBoolean();
+
+  IdleNotifier(Scheduler delegate, long delayNanos, DelegatingTrackingScheduler scheduler) {
+    this.worker = delegate.createWorker();
+    this.delayNanos = delayNanos;
+    this.scheduler = scheduler;
+  }
+
+  void onIdle() {
+    if (pending.compareAndSet(false, true)) {
+      worker.schedule(this, delayNanos, NANOSECONDS);
+    }
+  }
+
+  @Override public void call() {
+    pending.set(false);
+    scheduler.notifyIfIdle();
+  }
+}
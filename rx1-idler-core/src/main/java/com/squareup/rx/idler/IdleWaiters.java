@@ -0,0 +1,53 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.RestrictTo;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * Threads parked until a busy count reaches zero. A waiter adds itself before checking the count
+ * and the count is changed before waiters are woken, so a wake-up is never missed. When nobody is
+ * waiting, {@link #signal()} only reads the queue head.
+ */
+@RestrictTo(LIBRARY)
+final class IdleWaiters {
+  private final ConcurrentLinkedQueue<Thread> threads = new ConcurrentLinkedQueue<>();
+
+  /** Returns true once {@code work} is zero, or false if {@code timeoutNanos} elapsed first. */
+  boolean await(AtomicInteger work, long timeoutNanos) throws InterruptedException {
+    if (work.get() == 0) {
+      return true;
+    }
+    Thread thread = Thread.currentThread();
+    threads.add(thread);
+    try {
+      long deadline = System.nanoTime() + timeoutNanos;
+      while (work.get() != 0) {
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0L) {
+          return false;
+        }
+        LockSupport.parkNanos(this, remaining);
+      }
+      return true;
+    } finally {
+      threads.remove(thread);
+    }
+  }
+
+  /** Wake every waiting thread to re-check the count. */
+  void signal() {
+    if (threads.isEmpty()) {
+      return;
+    }
+    for (Thread thread : threads) {
+      LockSupport.unpark(thread);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Latency histograms for the work run by a {@link TrackingScheduler}. Enable with
+ * {@link IdlerOptions.Builder#latencyHistograms(boolean)}. A growing queue delay points to a
+ * saturated scheduler, while a long run time points to slow tasks.
+ */
+public final class IdlerLatency {
+  private final LatencyHistogram queueDelay = new LatencyHistogram();
+  private final LatencyHistogram runTime = new LatencyHistogram();
+  @Nullable private final LatencyHistogram cpuTime;
+
+  IdlerLatency(boolean threadCpuTime) {
+    this.cpuTime = threadCpuTime && threadCpuTimeSupported() ? new LatencyHistogram() : null;
+  }
+
+  /**
+   * The time from when each task was due until it started running. Work without a delay is due
+   * when scheduled, and each run of periodic work is due one period after the previous one was.
+   */
+  public LatencyHistogram queueDelay() {
+    return queueDelay;
+  }
+
+  /** The wall time each task spent running. */
+  public LatencyHistogram runTime() {
+    return runTime;
+  }
+
+  /**
+   * The CPU time each task spent running, or null if not enabled with
+   * {@link IdlerOptions.Builder#threadCpuTime(boolean)} or not supported by this runtime. A run
+   * time much larger than its CPU time means the task was blocked or descheduled.
+   */
+  @Nullable public LatencyHistogram cpuTime() {
+    return cpuTime;
+  }
+
+  /** The current thread's CPU time to pass to {@link #onEnd}, or 0 if it is not measured. */
+  long onStart(long dueNanos, long startNanos) {
+    queueDelay.record(startNanos - dueNanos);
+    return cpuTime != null ? ThreadCpuClock.now() : 0L;
+  }
+
+  void onEnd(long startNanos, long startCpuNanos) {
+    runTime.record(System.nanoTime() - startNanos);
+    LatencyHistogram cpuTime = this.cpuTime;
+    if (cpuTime != null) {
+      cpuTime.record(ThreadCpuClock.now() - startCpuNanos);
+    }
+  }
+
+  private static boolean threadCpuTimeSupported() {
+    try {
+      return ThreadCpuClock.isSupported();
+    } catch (LinkageError e) {
+      return false; // No java.lang.management on this runtime.
+    }
+  }
+
+  @Override public String toString() {
+    return "IdlerLatency{queueDelay=" + queueDelay
+        + ", runTime=" + runTime
+        + ", cpuTime=" + cpuTime
+        + '}';
+  }
+}
@@ -0,0 +1,168 @@
+package com.squareup.rx.idler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters for the work seen by a {@link TrackingScheduler}. Values may be read at any
+ * time from any thread and are updated as work is scheduled and run. Enable with
+ * {@link IdlerOptions.Builder#metrics(boolean)}.
+ */
+public final class IdlerMetrics {
+  private final AtomicLong immediateCount = new AtomicLong();
+  private final AtomicLong delayedCount = new AtomicLong();
+  private final AtomicLong periodicCount = new AtomicLong();
+  private final AtomicLong runCount = new AtomicLong();
+  private final AtomicLong unsubscribedBeforeRunCount = new AtomicLong();
+  private final AtomicLong idleTransitionCount = new AtomicLong();
+  private final AtomicLong busyNanos = new AtomicLong();
+  private final AtomicLong longestBusyNanos = new AtomicLong();
+  private volatile long busySince;
+  private final AtomicInteger queuedTasks = new AtomicInteger();
+  private final AtomicInteger runningTasks = new AtomicInteger();
+  private final AtomicInteger delayedTasks = new AtomicInteger();
+  private final AtomicInteger periodicTasks = new AtomicInteger();
+
+  IdlerMetrics() {
+  }
+
+  /** The number of tasks scheduled without a delay. */
+  public long immediateCount() {
+    return immediateCount.get();
+  }
+
+  /** The number of non-periodic tasks scheduled with a delay. */
+  public long delayedCount() {
+    return delayedCount.get();
+  }
+
+  /** The number of periodic tasks scheduled. */
+  public long periodicCount() {
+    return periodicCount.get();
+  }
+
+  /** The number of times a task started running. Each run of a periodic task is counted. */
+  public long runCount() {
+    return runCount.get();
+  }
+
+  /** The number of non-periodic tasks which were unsubscribed before they started running. */
+  public long unsubscribedBeforeRunCount() {
+    return unsubscribedBeforeRunCount.get();
+  }
+
+  /** The number of times the scheduler transitioned from busy to idle. */
+  public long idleTransitionCount() {
+    return idleTransitionCount.get();
+  }
+
+  /** The total time in nanoseconds of all completed busy periods. */
+  public long busyNanos() {
+    return busyNanos.get();
+  }
+
+  /** The longest completed busy period in nanoseconds. */
+  public long longestBusyNanos() {
+    return longestBusyNanos.get();
+  }
+
+  /**
+   * The number of tasks which are due and waiting to start. Work with a delay is counted by
+   * {@link #delayedTasks()} until it starts, even once it is due.
+   */
+  public int queuedTasks() {
+    return queuedTasks.get();
+  }
+
+  /** The number of tasks running right now. */
+  public int runningTasks() {
+    return runningTasks.get();
+  }
+
+  /**
+   * The number of tasks waiting on a delay, including periodic tasks waiting for their next run.
+   */
+  public int delayedTasks() {
+    return delayedTasks.get();
+  }
+
+  /** The number of periodic tasks which have not been unsubscribed. */
+  public int periodicTasks() {
+    return periodicTasks.get();
+  }
+
+  void onScheduled(long delayNanos, long period) {
+    if (period > 0L) {
+      periodicCount.incrementAndGet();
+      periodicTasks.incrementAndGet();
+    } else if (delayNanos > 0L) {
+      delayedCount.incrementAndGet();
+    } else {
+      immediateCount.incrementAndGet();
+    }
+    (delayNanos > 0L ? delayedTasks : queuedTasks).incrementAndGet();
+  }
+
+  void onRun(boolean queued) {
+    runCount.incrementAndGet();
+    (queued ? queuedTasks : delayedTasks).decrementAndGet();
+    runningTasks.incrementAndGet();
+  }
+
+  /** A periodic task waits for its next run from here, unless it is unsubscribed first. */
+  void onRunEnd(boolean periodic) {
+    if (periodic) {
+      delayedTasks.incrementAndGet();
+    }
+    runningTasks.decrementAndGet();
+  }
+
+  /** Undo {@link #onRunEnd} for a periodic task unsubscribed while it ran. */
+  void onPeriodicRunUnsubscribed() {
+    delayedTasks.decrementAndGet();
+  }
+
+  void onUnsubscribed(boolean waiting, boolean queued, boolean periodic) {
+    if (waiting) {
+      (queued ? queuedTasks : delayedTasks).decrementAndGet();
+      if (!periodic) {
+        unsubscribedBeforeRunCount.incrementAndGet();
+      }
+    }
+    if (periodic) {
+      periodicTasks.decrementAndGet();
+    }
+  }
+
+  void onBusy() {
+    busySince = System.nanoTime();
+  }
+
+  void onIdle() {
+    long busy = System.nanoTime() - busySince;
+    idleTransitionCount.incrementAndGet();
+    busyNanos.addAndGet(busy);
+    for (;;) {
+      long longest = longestBusyNanos.get();
+      if (busy <= longest || longestBusyNanos.compareAndSet(longest, busy)) {
+        return;
+      }
+    }
+  }
+
+  @Override public String toString() {
+    return "IdlerMetrics{immediate=" + immediateCount()
+        + ", delayed=" + delayedCount()
+        + ", periodic=" + periodicCount()
+        + ", run=" + runCount()
+        + ", unsubscribedBeforeRun=" + unsubscribedBeforeRunCount()
+        + ", idleTransitions=" + idleTransitionCount()
+        + ", busyNanos=" + busyNanos()
+        + ", longestBusyNanos=" + longestBusyNanos()
+        + ", queuedTasks=" + queuedTasks()
+        + ", runningTasks=" + runningTasks()
+        + ", delayedTasks=" + delayedTasks()
+        + ", periodicTasks=" + periodicTasks()
+        + '}';
+  }
+}
@@ -0,0 +1,290 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.CheckResult;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options which tune how a {@link TrackingScheduler} created by {@link RxTracking}, or an
+ * {@code IdlingResourceScheduler} created by {@code RxIdler}, tracks work. Use {@link #DEFAULT}
+ * for the standard behavior.
+ * <p>
+ * <pre><code>
+ * IdlerOptions options = new IdlerOptions.Builder()
+ *     .stripedCounter(true)
+ *     .build();
+ * </code></pre>
+ */
+public final class IdlerOptions {
+  /** The options used when none are specified. */
+  public static final IdlerOptions DEFAULT = new Builder().build();
+
+  final boolean stripedCounter;
+  final long lookAheadNanos;
+  final boolean metrics;
+  final int inFlightCapacity;
+  final int stackSampleRate;
+  final long dumpInFlightAfterNanos;
+  final long coalesceIdleNanos;
+  @Nullable final TrackingGroup group;
+  final boolean virtualTime;
+  final double timeCompression;
+  final int traceCapacity;
+  @Nullable final BusyPolicy busyPolicy;
+  final boolean latencyHistograms;
+  final boolean threadCpuTime;
+
+  IdlerOptions(Builder builder) {
+    this.stripedCounter = builder.stripedCounter;
+    this.lookAheadNanos = builder.lookAheadNanos;
+    this.metrics = builder.metrics;
+    this.inFlightCapacity = builder.inFlightCapacity;
+    this.stackSampleRate = builder.stackSampleRate;
+    this.dumpInFlightAfterNanos = builder.dumpInFlightAfterNanos;
+    this.coalesceIdleNanos = builder.coalesceIdleNanos;
+    this.group = builder.group;
+    this.virtualTime = builder.virtualTime;
+    this.timeCompression = builder.timeCompression;
+    this.traceCapacity = builder.traceCapacity;
+    this.busyPolicy = builder.busyPolicy;
+    this.latencyHistograms = builder.latencyHistograms;
+    this.threadCpuTime = builder.threadCpuTime;
+  }
+
+  /** Returns a builder initialized with these options. */
+  @CheckResult @NonNull
+  public Builder newBuilder() {
+    return new Builder(this);
+  }
+
+  public static final class Builder {
+    boolean stripedCounter;
+    long lookAheadNanos;
+    boolean metrics;
+    int inFlightCapacity;
+    int stackSampleRate;
+    long dumpInFlightAfterNanos;
+    long coalesceIdleNanos = -1L;
+    @Nullable TrackingGroup group;
+    boolean virtualTime;
+    double timeCompression = 1d;
+    int traceCapacity;
+    @Nullable BusyPolicy busyPolicy;
+    boolean latencyHistograms;
+    boolean threadCpuTime;
+
+    public Builder() {
+    }
+
+    Builder(IdlerOptions options) {
+      this.stripedCounter = options.stripedCounter;
+      this.lookAheadNanos = options.lookAheadNanos;
+      this.metrics = options.metrics;
+      this.inFlightCapacity = options.inFlightCapacity;
+      this.stackSampleRate = options.stackSampleRate;
+      this.dumpInFlightAfterNanos = options.dumpInFlightAfterNanos;
+      this.coalesceIdleNanos = options.coalesceIdleNanos;
+      this.group = options.group;
+      this.virtualTime = options.virtualTime;
+      this.timeCompression = options.timeCompression;
+      this.traceCapacity = options.traceCapacity;
+      this.busyPolicy = options.busyPolicy;
+      this.latencyHistograms = options.latencyHistograms;
+      this.threadCpuTime = options.threadCpuTime;
+    }
+
+    /**
+     * Count busy work in per-thread stripes rather than a single shared counter. A task counts in
+     * the stripe of the thread which schedules it, and the shared total only changes when a stripe
+     * moves between zero and non-zero. This reduces contention when many threads each schedule
+     * work while their earlier work is still pending. When a single thread schedules the work,
+     * such as the main thread, every task shares one stripe and this costs more than the single
+     * counter. Idleness is still reported exactly.
+     */
+    @NonNull
+    public Builder stripedCounter(boolean stripedCounter) {
+      this.stripedCounter = stripedCounter;
+      return this;
+    }
+
+    /**
+     * Treat delayed work which is due within {@code time} as busy. Work scheduled further in the
+     * future becomes busy once it enters this window. This keeps short delays such as
+     * {@code debounce} from letting Espresso continue before their work runs. Periodic work is
+     * busy early only when its initial delay is already within the window, and each repetition is
+     * busy only while running.
+     * <p>
+     * Defaults to zero, where only work without a delay is busy before it runs.
+     */
+    @SuppressWarnings("ConstantConditions") // Public API guarding.
+    @NonNull
+    public Builder lookAhead(long time, @NonNull TimeUnit unit) {
+      if (time < 0) throw new IllegalArgumentException("time < 0: " + time);
+      if (unit == null) throw new NullPointerException("unit == null");
+      this.lookAheadNanos = unit.toNanos(time);
+      return this;
+    }
+
+    /**
+     * Record {@link IdlerMetrics} for the scheduler, available from
+     * {@link TrackingScheduler#getMetrics()}. Disabled by default.
+     */
+    @NonNull
+    public Builder metrics(boolean metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * Keep track of up to {@code capacity} tasks which have been scheduled but not yet completed
+     * or unsubscribed, available from {@link TrackingScheduler#dumpInFlightWork()}. Use this
+     * to find out what a scheduler which never becomes idle is running. Disabled by default.
+     */
+    @NonNull
+    public Builder trackInFlight(int capacity) {
+      if (capacity < 0) throw new IllegalArgumentException("capacity < 0: " + capacity);
+      this.inFlightCapacity = capacity;
+      return this;
+    }
+
+    /**
+     * Capture the stack trace of the scheduling call for one in every {@code rate} tasks tracked
+     * by {@link #trackInFlight(int)}. Capturing a stack trace is expensive so this is disabled by
+     * default.
+     */
+    @NonNull
+    public Builder sampleStacks(int rate) {
+      if (rate < 0) throw new IllegalArgumentException("rate < 0: " + rate);
+      this.stackSampleRate = rate;
+      return this;
+    }
+
+    /**
+     * Log a dump of the tasks tracked by {@link #trackInFlight(int)} when Espresso finds the
+     * scheduler still busy after {@code time}. Set this below Espresso's idling resource timeout
+     * to see what is in flight when the timeout happens.
+     */
+    @SuppressWarnings("ConstantConditions") // Public API guarding.
+    @NonNull
+    public Builder dumpInFlightAfter(long time, @NonNull TimeUnit unit) {
+      if (time < 0) throw new IllegalArgumentException("time < 0: " + time);
+      if (unit == null) throw new NullPointerException("unit == null");
+      this.dumpInFlightAfterNanos = unit.toNanos(time);
+      return this;
+    }
+
+    /**
+     * Report transitions to idle from a separate task on the wrapped scheduler, run after
+     * {@code time} has passed, rather than synchronously from the thread which finished the work.
+     * Transitions in the meantime are reported once, and none is reported if the scheduler is busy
+     * again by then. Use this when a scheduler flaps between busy and idle so quickly that the
+     * callbacks themselves slow down its work. A zero delay still moves the callback off the
+     * finishing thread.
+     * <p>
+     * Disabled by default. {@link TrackingScheduler#isIdleNow()} is always exact.
+     */
+    @SuppressWarnings("ConstantConditions") // Public API guarding.
+    @NonNull
+    public Builder coalesceIdle(long time, @NonNull TimeUnit unit) {
+      if (time < 0) throw new IllegalArgumentException("time < 0: " + time);
+      if (unit == null) throw new NullPointerException("unit == null");
+      this.coalesceIdleNanos = unit.toNanos(time);
+      return this;
+    }
+
+    /**
+     * Track busy state in {@code group} together with every other scheduler using it, rather than
+     * separately. Use the same options, or options with the same group, for each scheduler which
+     * should be part of it. With Espresso, use an {@code IdlingResourceGroup}. Defaults to null,
+     * where each scheduler tracks its own busy state.
+     */
+    @NonNull
+    public Builder group(@Nullable TrackingGroup group) {
+      this.group = group;
+      return this;
+    }
+
+    /**
+     * Run delayed and periodic work on a virtual clock which can be moved ahead of real time.
+     * Whenever Espresso finds the scheduler idle with non-periodic delayed work pending, such as a
+     * {@code timeout} or retry backoff, the clock skips forward to that work and runs it instead of
+     * waiting. Periodic work like {@code interval} never triggers a skip, since it would keep
+     * Espresso busy forever, but runs as usual when due and when the clock skips past it. Use
+     * {@link TrackingScheduler#advanceTimeBy} to move the clock explicitly. The scheduler's
+     * {@code now()} follows the virtual clock.
+     * <p>
+     * Work due on the virtual clock is counted as busy only from the moment it is due, so
+     * {@link #lookAhead} is ignored. Disabled by default.
+     */
+    @NonNull
+    public Builder virtualTime(boolean virtualTime) {
+      this.virtualTime = virtualTime;
+      return this;
+    }
+
+    /**
+     * Divide every delay and period by {@code factor} before passing work to the wrapped
+     * scheduler, and make the scheduler's {@code now()} run {@code factor} times faster to match.
+     * A {@code debounce(300, MILLISECONDS)} with a factor of 10 waits 30ms of real time, for
+     * example. Unlike {@link #virtualTime(boolean)} this keeps work running in real time, only
+     * sooner. Defaults to 1, where delays are unchanged.
+     */
+    @NonNull
+    public Builder compressTime(double factor) {
+      if (!(factor >= 1d)) throw new IllegalArgumentException("factor < 1: " + factor);
+      this.timeCompression = factor;
+      return this;
+    }
+
+    /**
+     * Record the last {@code capacity} scheduling events: each task being scheduled, starting,
+     * ending and being unsubscribed, and the scheduler turning busy and idle. Use
+     * {@link TrackingScheduler#writeTrace} to save them as a Chrome trace which can be
+     * opened in Perfetto alongside a CPU profile. Disabled by default.
+     */
+    @NonNull
+    public Builder trace(int capacity) {
+      if (capacity < 0) throw new IllegalArgumentException("capacity < 0: " + capacity);
+      this.traceCapacity = capacity;
+      return this;
+    }
+
+    /**
+     * Decide per task whether it keeps the scheduler busy, is counted only while running, or is
+     * ignored. Defaults to null, where every task is counted by the usual rules.
+     */
+    @NonNull
+    public Builder busyPolicy(@Nullable BusyPolicy busyPolicy) {
+      this.busyPolicy = busyPolicy;
+      return this;
+    }
+
+    /**
+     * Record histograms of how long each task waited to start and how long it ran, available
+     * from {@link TrackingScheduler#getLatency()}. Recording allocates nothing but reads the clock
+     * twice per run. Disabled by default.
+     */
+    @NonNull
+    public Builder latencyHistograms(boolean latencyHistograms) {
+      this.latencyHistograms = latencyHistograms;
+      return this;
+    }
+
+    /**
+     * Also record the CPU time of each run in {@link IdlerLatency#cpuTime()} when
+     * {@link #latencyHistograms(boolean)} is enabled. This needs {@code java.lang.management},
+     * which Android does not have, and is skipped where it is missing. Disabled by default.
+     */
+    @NonNull
+    public Builder threadCpuTime(boolean threadCpuTime) {
+      this.threadCpuTime = threadCpuTime;
+      return this;
+    }
+
+    @CheckResult @NonNull
+    public IdlerOptions build() {
+      return new IdlerOptions(this);
+    }
+  }
+}
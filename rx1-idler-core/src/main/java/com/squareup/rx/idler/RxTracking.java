@@ -0,0 +1,122 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.CheckResult;
+import androidx.annotation.NonNull;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import rx.Completable;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Single;
+import rx.functions.Action0;
+import rx.functions.Func1;
+
+/**
+ * Factory methods for tracking whether a RxJava {@link Scheduler} is busy without depending on
+ * Espresso, such as in JVM tests or services.
+ * <p>
+ * <pre><code>
+ * TrackingScheduler scheduler = RxTracking.wrap(Schedulers.io(), "IO");
+ * // Use 'scheduler' in place of Schedulers.io()...
+ * scheduler.awaitIdle(10, SECONDS);
+ * </code></pre>
+ */
+public final class RxTracking {
+  /** Wraps the supplied {@link Scheduler} into one which tracks whether it is busy. */
+  @CheckResult @NonNull
+  public static TrackingScheduler wrap(@NonNull Scheduler scheduler, @NonNull String name) {
+    return wrap(scheduler, name, IdlerOptions.DEFAULT);
+  }
+
+  /**
+   * Wraps the supplied {@link Scheduler} into one which tracks whether it is busy, configured by
+   * {@code options}.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static TrackingScheduler wrap(@NonNull Scheduler scheduler, @NonNull String name,
+      @NonNull IdlerOptions options) {
+    if (scheduler == null) throw new NullPointerException("scheduler == null");
+    if (name == null) throw new NullPointerException("name == null");
+    if (options == null) throw new NullPointerException("options == null");
+    return new DelegatingTrackingScheduler(scheduler, name, options);
+  }
+
+  /**
+   * Wraps the supplied {@link ExecutorService} into one which counts its tasks in {@code group}.
+   * A task is busy from submission until it completes or is cancelled. Pass the result to
+   * {@code Schedulers.from()} to count Rx work and direct submissions together.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static ExecutorService wrap(@NonNull ExecutorService executor,
+      @NonNull TrackingGroup group) {
+    if (executor == null) throw new NullPointerException("executor == null");
+    if (group == null) throw new NullPointerException("group == null");
+    return new TrackingExecutorService(executor, group);
+  }
+
+  /**
+   * Wraps the supplied {@link ScheduledExecutorService} into one which counts its tasks in
+   * {@code group}. As with a {@link TrackingScheduler}, tasks without a delay are busy from
+   * submission until they complete or are cancelled, while delayed and periodic tasks are busy
+   * only while running.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static ScheduledExecutorService wrap(@NonNull ScheduledExecutorService executor,
+      @NonNull TrackingGroup group) {
+    if (executor == null) throw new NullPointerException("executor == null");
+    if (group == null) throw new NullPointerException("group == null");
+    return new TrackingExecutorService.Scheduled(executor, group);
+  }
+
+  /**
+   * Returns a function for {@code RxJavaHooks.setOnScheduleAction} which counts every action run by
+   * any scheduler in {@code group}, including custom schedulers and ones created before the hook
+   * was installed.
+   * <p>
+   * Note: The hook sees neither the delay nor the unsubscription of an action, so actions are
+   * counted only while running. Work queued behind another action does not mark the group busy.
+   * Wrap the schedulers in the same group as well to count queued work.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static Func1<Action0, Action0> scheduleAction(@NonNull TrackingGroup group) {
+    if (group == null) throw new NullPointerException("group == null");
+    return new TrackingScheduleAction(group);
+  }
+
+  /**
+   * Returns a transformer which counts each subscription in {@code group} from subscribe until a
+   * terminal event or unsubscription. Apply it with {@code compose()} to an {@link Observable}
+   * whose work happens off of any tracked scheduler.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static <T> Observable.Transformer<T, T> observableTransformer(
+      @NonNull TrackingGroup group) {
+    if (group == null) throw new NullPointerException("group == null");
+    return new TrackingTransformers.ObservableTracker<>(group);
+  }
+
+  /** Like {@link #observableTransformer(TrackingGroup)}, but for a {@link Single}. */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static <T> Single.Transformer<T, T> singleTransformer(@NonNull TrackingGroup group) {
+    if (group == null) throw new NullPointerException("group == null");
+    return new TrackingTransformers.SingleTracker<>(group);
+  }
+
+  /** Like {@link #observableTransformer(TrackingGroup)}, but for a {@link Completable}. */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static Completable.Transformer completableTransformer(@NonNull TrackingGroup group) {
+    if (group == null) throw new NullPointerException("group == null");
+    return new TrackingTransformers.CompletableTracker(group);
+  }
+
+  private RxTracking() {
+    throw new AssertionError("No instances");
+  }
+}
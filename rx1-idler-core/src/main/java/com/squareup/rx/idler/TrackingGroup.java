@@ -0,0 +1,93 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single busy count for every scheduler created with
+ * {@link IdlerOptions.Builder#group(TrackingGroup)}. A task which schedules follow-up work on
+ * another scheduler in the group keeps the group busy through the hand-off, where separate
+ * schedulers would each be briefly idle at the same time.
+ * <p>
+ * Executors can be counted in the same group with {@link RxTracking#wrap(ExecutorService,
+ * TrackingGroup)}, so that work submitted to a pool directly and work from
+ * {@code Schedulers.from(executor)} count toward one busy state.
+ */
+public class TrackingGroup {
+  private final String name;
+  final AtomicInteger work = new AtomicInteger();
+  final IdleWaiters waiters = new IdleWaiters();
+  @Nullable private volatile IdleListener listener;
+  private final IdleListeners listeners = new IdleListeners();
+
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  public TrackingGroup(@NonNull String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    this.name = name;
+  }
+
+  @NonNull public String getName() {
+    return name;
+  }
+
+  /** Returns true when no scheduler in the group has work in flight. */
+  public boolean isIdleNow() {
+    return work.get() == 0;
+  }
+
+  /**
+   * Set the listener notified each time the whole group goes from busy to idle, replacing any
+   * previous one.
+   */
+  public void setIdleListener(@Nullable IdleListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Add a listener notified each time the whole group goes from busy to idle, in addition to the
+   * one set by {@link #setIdleListener} and any others added.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  public void addIdleListener(@NonNull IdleListener listener) {
+    if (listener == null) throw new NullPointerException("listener == null");
+    listeners.add(listener);
+  }
+
+  /** Remove a listener added with {@link #addIdleListener}. */
+  public void removeIdleListener(@NonNull IdleListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Block the calling thread until no scheduler or executor in the group has work in flight, or
+   * until {@code timeout} elapses. Returns false on timeout.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  public boolean awaitIdle(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+    if (unit == null) throw new NullPointerException("unit == null");
+    return waiters.await(work, unit.toNanos(timeout));
+  }
+
+  /** Count work which has no per-scheduler state to update, such as from an executor. */
+  void startWork() {
+    work.incrementAndGet();
+  }
+
+  void stopWork() {
+    if (work.decrementAndGet() == 0) {
+      waiters.signal();
+      notifyIdle();
+    }
+  }
+
+  void notifyIdle() {
+    IdleListener listener = this.listener;
+    if (listener != null) {
+      listener.onIdle();
+    }
+    listeners.notifyIdle();
+  }
+}
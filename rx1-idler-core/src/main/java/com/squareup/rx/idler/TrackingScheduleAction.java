@@ -0,0 +1,44 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.RestrictTo;
+import rx.functions.Action0;
+import rx.functions.Func1;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * A schedule hook which counts every {@link Action0} in a {@link TrackingGroup} while it runs.
+ * The hook sees neither the delay nor the unsubscription of the work it wraps, so unlike a
+ * {@link TrackingScheduler} it cannot count work which is waiting to run.
+ */
+@RestrictTo(LIBRARY)
+final class TrackingScheduleAction implements Func1<Action0, Action0> {
+  private final TrackingGroup group;
+
+  TrackingScheduleAction(TrackingGroup group) {
+    this.group = group;
+  }
+
+  @Override public Action0 call(Action0 action) {
+    return new TrackedAction(group, action);
+  }
+
+  static final class TrackedAction implements Action0 {
+    private final TrackingGroup group;
+    private final Action0 delegate;
+
+    TrackedAction(TrackingGroup group, Action0 delegate) {
+      this.group = group;
+      this.delegate = delegate;
+    }
+
+    @Override public void call() {
+      group.startWork();
+      try {
+        delegate.call();
+      } finally {
+        group.stopWork();
+      }
+    }
+  }
+}
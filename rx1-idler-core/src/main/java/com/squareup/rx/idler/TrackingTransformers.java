@@ -0,0 +1,93 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.RestrictTo;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * Transformers which count each subscription in a {@link TrackingGroup} from subscribe until a
+ * terminal event or unsubscription. Each is built on {@code using} with eager disposal, which
+ * releases the count exactly once whichever of the two comes first.
+ * <p>
+ * Each subscription pays for the subscriber and subscription which {@code using} creates, and a
+ * {@link Single} also for its round trip through {@link Observable}. The resource factory and
+ * disposer are shared by every subscription and take no locks.
+ */
+@RestrictTo(LIBRARY)
+final class TrackingTransformers {
+  static final class ObservableTracker<T> implements Observable.Transformer<T, T> {
+    private final Tracker tracker;
+
+    ObservableTracker(TrackingGroup group) {
+      this.tracker = new Tracker(group);
+    }
+
+    @Override public Observable<T> call(final Observable<T> upstream) {
+      return Observable.using(tracker, new Func1<TrackingGroup, Observable<T>>() {
+        @Override public Observable<T> call(TrackingGroup group) {
+          return upstream;
+        }
+      }, tracker, true);
+    }
+  }
+
+  /**
+   * Goes through {@link Observable#using} as {@code Single.using} does not release its resource
+   * when unsubscribed.
+   */
+  static final class SingleTracker<T> implements Single.Transformer<T, T> {
+    private final ObservableTracker<T> observableTracker;
+
+    SingleTracker(TrackingGroup group) {
+      this.observableTracker = new ObservableTracker<>(group);
+    }
+
+    @Override public Single<T> call(Single<T> upstream) {
+      return observableTracker.call(upstream.toObservable()).toSingle();
+    }
+  }
+
+  static final class CompletableTracker implements Completable.Transformer {
+    private final Tracker tracker;
+
+    CompletableTracker(TrackingGroup group) {
+      this.tracker = new Tracker(group);
+    }
+
+    @Override public Completable call(final Completable upstream) {
+      return Completable.using(tracker, new Func1<TrackingGroup, Completable>() {
+        @Override public Completable call(TrackingGroup group) {
+          return upstream;
+        }
+      }, tracker, true);
+    }
+  }
+
+  /** Starts work as the resource for each subscription and stops it as that resource's disposal. */
+  static final class Tracker implements Func0<TrackingGroup>, Action1<TrackingGroup> {
+    private final TrackingGroup group;
+
+    Tracker(TrackingGroup group) {
+      this.group = group;
+    }
+
+    @Override public TrackingGroup call() {
+      group.startWork();
+      return group;
+    }
+
+    @Override public void call(TrackingGroup group) {
+      group.stopWork();
+    }
+  }
+
+  private TrackingTransformers() {
+    throw new AssertionError("No instances");
+  }
+}
@@ -0,0 +1,206 @@
+package com.squareup.rx.idler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import rx.Scheduler;
+import rx.functions.Action0;
+import rx.internal.schedulers.SchedulerLifecycle;
+import rx.schedulers.TestScheduler;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class DelegatingTrackingSchedulerTest {
+  private final TestScheduler delegate = new TestScheduler();
+  private final TrackingScheduler scheduler = RxTracking.wrap(delegate, "Bob");
+  private final CountingIdleListener listener = new CountingIdleListener();
+
+  @Test public void name() {
+    assertEquals("Bob", scheduler.getName());
+  }
+
+  @Test public void listenerNotifiedOnTransitionToIdle() {
+    scheduler.setIdleListener(listener);
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    assertFalse(scheduler.isIdleNow());
+    assertEquals(0, listener.count.get());
+    delegate.triggerActions();
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, listener.count.get());
+  }
+
+  @Test public void listenerReplacedAndCleared() {
+    CountingIdleListener first = new CountingIdleListener();
+    scheduler.setIdleListener(first);
+    scheduler.setIdleListener(listener);
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    assertEquals(0, first.count.get());
+    assertEquals(1, listener.count.get());
+
+    scheduler.setIdleListener(null);
+    worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    assertEquals(1, listener.count.get());
+  }
+
+  @Test public void addedListenersNotifiedAlongsideSetListener() {
+    CountingIdleListener first = new CountingIdleListener();
+    CountingIdleListener second = new CountingIdleListener();
+    scheduler.setIdleListener(listener);
+    scheduler.addIdleListener(first);
+    scheduler.addIdleListener(second);
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    assertEquals(1, listener.count.get());
+    assertEquals(1, first.count.get());
+    assertEquals(1, second.count.get());
+
+    scheduler.removeIdleListener(first);
+    scheduler.setIdleListener(null);
+    worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    assertEquals(1, listener.count.get());
+    assertEquals(1, first.count.get());
+    assertEquals(2, second.count.get());
+  }
+
+  @Test public void addNullListenerFails() {
+    try {
+      scheduler.addIdleListener(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("listener == null", e.getMessage());
+    }
+  }
+
+  @Test public void groupAddedListenerNotified() {
+    TrackingGroup group = new TrackingGroup("Group");
+    CountingIdleListener set = new CountingIdleListener();
+    group.setIdleListener(set);
+    group.addIdleListener(listener);
+    IdlerOptions options = new IdlerOptions.Builder().group(group).build();
+    Scheduler.Worker worker = RxTracking.wrap(delegate, "Member", options).createWorker();
+    worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    assertEquals(1, set.count.get());
+    assertEquals(1, listener.count.get());
+
+    group.removeIdleListener(listener);
+    worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    assertEquals(2, set.count.get());
+    assertEquals(1, listener.count.get());
+  }
+
+  @Test public void groupListenerNotifiedWhenWholeGroupIdle() {
+    TrackingGroup group = new TrackingGroup("Group");
+    group.setIdleListener(listener);
+    IdlerOptions options = new IdlerOptions.Builder().group(group).build();
+    TrackingScheduler first = RxTracking.wrap(delegate, "First", options);
+    TrackingScheduler second = RxTracking.wrap(delegate, "Second", options);
+    assertSame(group, first.getGroup());
+    assertNull(scheduler.getGroup());
+
+    first.createWorker().schedule(new CountingAction(), 1, SECONDS);
+    second.createWorker().schedule(new CountingAction());
+    assertFalse(group.isIdleNow());
+    assertFalse(first.isIdleNow());
+    delegate.triggerActions();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, listener.count.get());
+  }
+
+  @Test public void groupedSchedulersRecordTheirOwnBusyPeriods() {
+    IdlerOptions options = new IdlerOptions.Builder()
+        .group(new TrackingGroup("Group"))
+        .metrics(true)
+        .build();
+    TestScheduler otherDelegate = new TestScheduler();
+    TrackingScheduler first = RxTracking.wrap(delegate, "First", options);
+    TrackingScheduler second = RxTracking.wrap(otherDelegate, "Second", options);
+    long start = System.nanoTime();
+
+    // The first scheduler makes the group busy and the second makes it idle again.
+    first.createWorker().schedule(new CountingAction());
+    second.createWorker().schedule(new CountingAction());
+    delegate.triggerActions();
+    assertEquals(1, first.getMetrics().idleTransitionCount());
+    assertEquals(0, second.getMetrics().idleTransitionCount());
+    otherDelegate.triggerActions();
+    long elapsed = System.nanoTime() - start;
+    assertEquals(1, first.getMetrics().idleTransitionCount());
+    assertEquals(1, second.getMetrics().idleTransitionCount());
+    assertTrue(first.getMetrics().busyNanos() <= elapsed);
+    assertTrue(second.getMetrics().busyNanos() <= elapsed);
+  }
+
+  @Test public void ignoredDelayedWorkStaysIdleOnVirtualClock() {
+    IdlerOptions options = new IdlerOptions.Builder()
+        .virtualTime(true)
+        .busyPolicy(new BusyPolicy() {
+          @Override public Busy decide(Action0 task, long delayNanos, long periodNanos) {
+            return Busy.IGNORE;
+          }
+        })
+        .build();
+    TrackingScheduler scheduler = RxTracking.wrap(delegate, "Bob", options);
+    CountingAction action = new CountingAction();
+    scheduler.createWorker().schedule(action, 30, SECONDS);
+
+    // Skips ahead to the ignored work without counting it.
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(SECONDS.toMillis(30), scheduler.now());
+    delegate.triggerActions();
+    assertEquals(1, action.count());
+    assertTrue(scheduler.isIdleNow());
+  }
+
+  @Test public void nowFollowsDelegate() {
+    delegate.advanceTimeBy(5, SECONDS);
+    assertEquals(5000, scheduler.now());
+    assertEquals(5000, scheduler.createWorker().now());
+  }
+
+  @Test public void startAndShutdownForwardedToDelegate() {
+    LifecycleScheduler delegate = new LifecycleScheduler();
+    SchedulerLifecycle scheduler = (SchedulerLifecycle) RxTracking.wrap(delegate, "Bob");
+    scheduler.shutdown();
+    assertEquals(1, delegate.shutdowns);
+    scheduler.start();
+    assertEquals(1, delegate.starts);
+  }
+
+  private static final class LifecycleScheduler extends Scheduler implements SchedulerLifecycle {
+    int starts;
+    int shutdowns;
+
+    @Override public Worker createWorker() {
+      return new TestScheduler().createWorker();
+    }
+
+    @Override public void start() {
+      starts++;
+    }
+
+    @Override public void shutdown() {
+      shutdowns++;
+    }
+  }
+
+  private static final class CountingIdleListener implements IdleListener {
+    final AtomicInteger count = new AtomicInteger();
+
+    @Override public void onIdle() {
+      count.incrementAndGet();
+    }
+  }
+}
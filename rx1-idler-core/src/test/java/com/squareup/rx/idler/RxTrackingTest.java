@@ -0,0 +1,85 @@
+package com.squareup.rx.idler;
+
+import java.util.concurrent.ExecutorService;
+import org.junit.Test;
+import rx.schedulers.TestScheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public final class RxTrackingTest {
+  @Test public void nullWrapArgumentsFails() {
+    try {
+      RxTracking.wrap(null, "Bob");
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("scheduler == null", e.getMessage());
+    }
+    try {
+      RxTracking.wrap(new TestScheduler(), null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+    try {
+      RxTracking.wrap(new TestScheduler(), "Bob", null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("options == null", e.getMessage());
+    }
+  }
+
+  @Test public void nullExecutorWrapArgumentsFails() {
+    try {
+      RxTracking.wrap((ExecutorService) null, new TrackingGroup("Bob"));
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("executor == null", e.getMessage());
+    }
+    try {
+      RxTracking.wrap(new QueueExecutorService(), null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("group == null", e.getMessage());
+    }
+  }
+
+  @Test public void nullScheduleActionGroupFails() {
+    try {
+      RxTracking.scheduleAction(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("group == null", e.getMessage());
+    }
+  }
+
+  @Test public void nullTransformerGroupFails() {
+    try {
+      RxTracking.observableTransformer(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("group == null", e.getMessage());
+    }
+    try {
+      RxTracking.singleTransformer(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("group == null", e.getMessage());
+    }
+    try {
+      RxTracking.completableTransformer(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("group == null", e.getMessage());
+    }
+  }
+
+  @Test public void nullGroupNameFails() {
+    try {
+      new TrackingGroup(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+  }
+}
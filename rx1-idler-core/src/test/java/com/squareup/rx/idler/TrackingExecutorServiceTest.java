@@ -0,0 +1,275 @@
+package com.squareup.rx.idler;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class TrackingExecutorServiceTest {
+  private final QueueExecutorService delegate = new QueueExecutorService();
+  private final TrackingGroup group = new TrackingGroup("Pool");
+  private final ExecutorService executor = RxTracking.wrap(delegate, group);
+  private final AtomicInteger idleCount = new AtomicInteger();
+  private ScheduledExecutorService pool;
+
+  public TrackingExecutorServiceTest() {
+    group.setIdleListener(new IdleListener() {
+      @Override public void onIdle() {
+        idleCount.incrementAndGet();
+      }
+    });
+  }
+
+  @After public void tearDown() {
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test public void executeReportsBusyUntilRun() {
+    CountingRunnable runnable = new CountingRunnable();
+    executor.execute(runnable);
+    assertFalse(group.isIdleNow());
+    delegate.runAll();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, runnable.count());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void submitReturnsResult() throws Exception {
+    Future<String> future = executor.submit(new Callable<String>() {
+      @Override public String call() {
+        return "Hello";
+      }
+    });
+    assertFalse(group.isIdleNow());
+    delegate.runAll();
+    assertTrue(group.isIdleNow());
+    assertTrue(future.isDone());
+    assertEquals("Hello", future.get());
+  }
+
+  @Test public void submitCancelledBeforeRunReportsIdle() {
+    CountingRunnable runnable = new CountingRunnable();
+    Future<?> future = executor.submit(runnable);
+    assertFalse(group.isIdleNow());
+    assertTrue(future.cancel(false));
+    assertTrue(future.isCancelled());
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+
+    delegate.runAll();
+    assertEquals(0, runnable.count());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void cancelRacingRunReportsCancelled() throws Exception {
+    // The delegate runs the task just before the cancel reaches its future.
+    QueueExecutorService racing = new QueueExecutorService() {
+      @Override protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new FutureTask<T>(callable) {
+          @Override public boolean cancel(boolean mayInterruptIfRunning) {
+            run();
+            return super.cancel(mayInterruptIfRunning);
+          }
+        };
+      }
+    };
+    ExecutorService executor = RxTracking.wrap(racing, group);
+    CountingRunnable runnable = new CountingRunnable();
+    Future<?> future = executor.submit(runnable);
+    assertTrue(future.cancel(false));
+    assertTrue(future.isCancelled());
+    assertTrue(future.isDone());
+    assertFalse(future.cancel(false));
+    assertEquals(0, runnable.count());
+    assertTrue(group.isIdleNow());
+    try {
+      future.get();
+      fail();
+    } catch (CancellationException expected) {
+    }
+  }
+
+  @Test public void throwingTaskReportsIdle() {
+    executor.execute(new Runnable() {
+      @Override public void run() {
+        throw new IllegalStateException("Boom");
+      }
+    });
+    try {
+      delegate.runAll();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Boom", e.getMessage());
+    }
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void rejectedTaskReportsIdle() {
+    delegate.shutdown();
+    try {
+      executor.execute(new CountingRunnable());
+      fail();
+    } catch (RejectedExecutionException ignored) {
+    }
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void shutdownNowReturnsPendingTasksAndReportsIdle() {
+    CountingRunnable runnable = new CountingRunnable();
+    executor.execute(runnable);
+    List<Runnable> pending = executor.shutdownNow();
+    assertEquals(1, pending.size());
+    assertSame(runnable, pending.get(0));
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void shutdownNowReleasesSubmittedTasks() throws Exception {
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      ExecutorService executor = RxTracking.wrap(pool, group);
+      blockUntilShutdown(executor);
+      Future<?> runnable = executor.submit(new CountingRunnable());
+      Future<String> callable = executor.submit(new Callable<String>() {
+        @Override public String call() {
+          return "Hello";
+        }
+      });
+
+      List<Runnable> pending = executor.shutdownNow();
+      assertEquals(2, pending.size());
+      assertTrue(pending.contains(runnable));
+      assertTrue(pending.contains(callable));
+      assertTrue(runnable.isCancelled());
+      assertTrue(callable.isCancelled());
+      assertTrue(group.awaitIdle(5, SECONDS));
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test public void shutdownNowReleasesScheduledTasks() throws Exception {
+    pool = Executors.newScheduledThreadPool(1);
+    ScheduledExecutorService executor = RxTracking.wrap(pool, group);
+    blockUntilShutdown(executor);
+    Future<?> submitted = executor.submit(new CountingRunnable());
+    ScheduledFuture<?> scheduled = executor.schedule(new CountingRunnable(), 0, SECONDS);
+    ScheduledFuture<?> delayed = executor.schedule(new CountingRunnable(), 1, HOURS);
+
+    List<Runnable> pending = executor.shutdownNow();
+    assertEquals(3, pending.size());
+    assertTrue(pending.contains(submitted));
+    assertTrue(pending.contains(scheduled));
+    assertTrue(pending.contains(delayed));
+    assertTrue(scheduled.isCancelled());
+    assertTrue(group.awaitIdle(5, SECONDS));
+  }
+
+  @Test public void schedulerFromExecutorCountsRxWork() {
+    Scheduler.Worker worker = Schedulers.from(executor).createWorker();
+    CountingAction action = new CountingAction();
+    worker.schedule(action);
+    assertFalse(group.isIdleNow());
+    delegate.runAll();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, action.count());
+  }
+
+  @Test public void invokeAllReportsIdleOnceDone() throws Exception {
+    pool = Executors.newScheduledThreadPool(2);
+    ExecutorService executor = RxTracking.wrap((ExecutorService) pool, group);
+    Callable<Integer> task = new Callable<Integer>() {
+      @Override public Integer call() {
+        return 1;
+      }
+    };
+    List<Future<Integer>> futures = executor.invokeAll(Arrays.asList(task, task, task));
+    assertEquals(3, futures.size());
+    for (Future<Integer> future : futures) {
+      assertEquals(1, (int) future.get());
+    }
+    assertTrue(group.awaitIdle(5, SECONDS));
+  }
+
+  @Test public void scheduleWithDelayReportsIdleUntilRunning() {
+    pool = Executors.newScheduledThreadPool(1);
+    ScheduledExecutorService executor = RxTracking.wrap(pool, group);
+    ScheduledFuture<?> future = executor.schedule(new CountingRunnable(), 1, HOURS);
+    assertTrue(group.isIdleNow());
+    assertTrue(future.getDelay(SECONDS) > 0);
+    assertTrue(future.cancel(false));
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void scheduleWithoutDelayReportsBusyUntilRun() throws InterruptedException {
+    pool = Executors.newScheduledThreadPool(1);
+    ScheduledExecutorService executor = RxTracking.wrap(pool, group);
+    final CountDownLatch latch = new CountDownLatch(1);
+    executor.schedule(new Runnable() {
+      @Override public void run() {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    }, 0, SECONDS);
+    assertFalse(group.isIdleNow());
+    assertFalse(group.awaitIdle(10, MILLISECONDS));
+    latch.countDown();
+    assertTrue(group.awaitIdle(5, SECONDS));
+  }
+
+  @Test public void periodicTaskReportsIdleBetweenRuns() throws InterruptedException {
+    pool = Executors.newScheduledThreadPool(1);
+    ScheduledExecutorService executor = RxTracking.wrap(pool, group);
+    final CountDownLatch latch = new CountDownLatch(3);
+    ScheduledFuture<?> future = executor.scheduleAtFixedRate(new Runnable() {
+      @Override public void run() {
+        latch.countDown();
+      }
+    }, 0, 1, MILLISECONDS);
+    assertTrue(latch.await(5, SECONDS));
+    future.cancel(false);
+    assertTrue(group.awaitIdle(5, SECONDS));
+  }
+
+  /** Occupies the executor's only thread until it is interrupted by {@code shutdownNow()}. */
+  private static void blockUntilShutdown(ExecutorService executor) throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      @Override public void run() {
+        started.countDown();
+        try {
+          new CountDownLatch(1).await();
+        } catch (InterruptedException ignored) {
+        }
+      }
+    });
+    assertTrue(started.await(5, SECONDS));
+  }
+}
@@ -0,0 +1,76 @@
+package com.squareup.rx.idler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.plugins.RxJavaHooks;
+import rx.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class TrackingScheduleActionTest {
+  private final TrackingGroup group = new TrackingGroup("Work");
+  private final Func1<Action0, Action0> hook = RxTracking.scheduleAction(group);
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  public TrackingScheduleActionTest() {
+    group.setIdleListener(new IdleListener() {
+      @Override public void onIdle() {
+        idleCount.incrementAndGet();
+      }
+    });
+  }
+
+  @After public void tearDown() {
+    RxJavaHooks.reset();
+  }
+
+  @Test public void busyOnlyWhileRunning() {
+    BusyCheckingAction action = new BusyCheckingAction();
+    Action0 tracked = hook.call(action);
+    assertTrue(group.isIdleNow());
+    tracked.call();
+    assertEquals(1, action.busyRuns.get());
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void throwingActionReportsIdle() {
+    Action0 tracked = hook.call(new Action0() {
+      @Override public void call() {
+        throw new IllegalStateException("Boom");
+      }
+    });
+    try {
+      tracked.call();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Boom", e.getMessage());
+    }
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void installedHookCountsUnwrappedSchedulers() {
+    RxJavaHooks.setOnScheduleAction(hook);
+    QueueExecutorService executor = new QueueExecutorService();
+    BusyCheckingAction action = new BusyCheckingAction();
+    Schedulers.from(executor).createWorker().schedule(action);
+    executor.runAll();
+    assertEquals(1, action.busyRuns.get());
+    assertTrue(group.isIdleNow());
+  }
+
+  private final class BusyCheckingAction implements Action0 {
+    final AtomicInteger busyRuns = new AtomicInteger();
+
+    @Override public void call() {
+      if (!group.isIdleNow()) {
+        busyRuns.incrementAndGet();
+      }
+    }
+  }
+}
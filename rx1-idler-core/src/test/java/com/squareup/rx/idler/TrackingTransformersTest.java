@@ -0,0 +1,140 @@
+package com.squareup.rx.idler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class TrackingTransformersTest {
+  private final TrackingGroup group = new TrackingGroup("Network");
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  public TrackingTransformersTest() {
+    group.setIdleListener(new IdleListener() {
+      @Override public void onIdle() {
+        idleCount.incrementAndGet();
+      }
+    });
+  }
+
+  @Test public void observableBusyUntilCompleted() {
+    PublishSubject<String> subject = PublishSubject.create();
+    TestSubscriber<String> subscriber = new TestSubscriber<>();
+    subject.compose(RxTracking.<String>observableTransformer(group)).subscribe(subscriber);
+    assertFalse(group.isIdleNow());
+    subject.onNext("Hello");
+    assertFalse(group.isIdleNow());
+    subject.onCompleted();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+    subscriber.assertValue("Hello");
+    subscriber.assertCompleted();
+  }
+
+  @Test public void observableBusyUntilError() {
+    PublishSubject<String> subject = PublishSubject.create();
+    subject.compose(RxTracking.<String>observableTransformer(group))
+        .subscribe(new TestSubscriber<String>());
+    assertFalse(group.isIdleNow());
+    subject.onError(new RuntimeException("Boom"));
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void observableBusyUntilUnsubscribed() {
+    PublishSubject<String> subject = PublishSubject.create();
+    Subscription subscription =
+        subject.compose(RxTracking.<String>observableTransformer(group)).subscribe();
+    assertFalse(group.isIdleNow());
+    subscription.unsubscribe();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+    assertFalse(subject.hasObservers());
+  }
+
+  @Test public void eachSubscriptionCounted() {
+    PublishSubject<String> subject = PublishSubject.create();
+    Observable<String> tracked = subject.compose(RxTracking.<String>observableTransformer(group));
+    Subscription first = tracked.subscribe();
+    Subscription second = tracked.subscribe();
+    first.unsubscribe();
+    assertFalse(group.isIdleNow());
+    second.unsubscribe();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void synchronousSourceIdleAfterSubscribe() {
+    Observable.just("Hello").compose(RxTracking.<String>observableTransformer(group)).subscribe();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void singleBusyUntilSuccess() {
+    PublishSubject<String> subject = PublishSubject.create();
+    TestSubscriber<String> subscriber = new TestSubscriber<>();
+    subject.toSingle()
+        .compose(RxTracking.<String>singleTransformer(group))
+        .subscribe(subscriber);
+    assertFalse(group.isIdleNow());
+    subject.onNext("Hello");
+    subject.onCompleted();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+    subscriber.assertValue("Hello");
+  }
+
+  @Test public void singleBusyUntilUnsubscribed() {
+    PublishSubject<String> subject = PublishSubject.create();
+    Subscription subscription = subject.toSingle()
+        .compose(RxTracking.<String>singleTransformer(group))
+        .subscribe();
+    assertFalse(group.isIdleNow());
+    subscription.unsubscribe();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void completableBusyUntilCompleted() {
+    PublishSubject<String> subject = PublishSubject.create();
+    TestSubscriber<String> subscriber = new TestSubscriber<>();
+    Completable.fromObservable(subject)
+        .compose(RxTracking.completableTransformer(group))
+        .subscribe(subscriber);
+    assertFalse(group.isIdleNow());
+    subject.onCompleted();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+    subscriber.assertCompleted();
+  }
+
+  @Test public void completableBusyUntilUnsubscribed() {
+    PublishSubject<String> subject = PublishSubject.create();
+    Subscription subscription = Completable.fromObservable(subject)
+        .compose(RxTracking.completableTransformer(group))
+        .subscribe();
+    assertFalse(group.isIdleNow());
+    subscription.unsubscribe();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void sharesGroupWithSchedulers() {
+    TrackingScheduler scheduler = RxTracking.wrap(new TestScheduler(), "Test",
+        new IdlerOptions.Builder().group(group).build());
+    PublishSubject<String> subject = PublishSubject.create();
+    subject.compose(RxTracking.<String>observableTransformer(group)).subscribe();
+    assertFalse(scheduler.isIdleNow());
+    subject.onCompleted();
+    assertTrue(scheduler.isIdleNow());
+  }
+}
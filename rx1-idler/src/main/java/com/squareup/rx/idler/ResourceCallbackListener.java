@@ -0,0 +1,25 @@
+package com.squareup.rx.idler;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.test.espresso.IdlingResource.ResourceCallback;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/** Adapts Espresso's {@link ResourceCallback} to the tracking layer's {@link IdleListener}. */
+@RestrictTo(LIBRARY)
+final class ResourceCallbackListener implements IdleListener {
+  @Nullable static IdleListener wrap(@Nullable ResourceCallback callback) {
+    return callback != null ? new ResourceCallbackListener(callback) : null;
+  }
+
+  private final ResourceCallback callback;
+
+  private ResourceCallbackListener(ResourceCallback callback) {
+    this.callback = callback;
+  }
+
+  @Override public void onIdle() {
+    callback.onTransitionToIdle();
+  }
+}
@@ -4,7 +4,12 @@ import androidx.annotation.CheckResult;
 import androidx.annotation.NonNull;
 import androidx.test.espresso.IdlingRegistry;
 import androidx.test.espresso.IdlingResource;
+import rx.Completable;
+import rx.Observable;
 import rx.Scheduler;
+import rx.Single;
+import rx.functions.Action0;
+import rx.functions.Func1;
 import rx.plugins.RxJavaSchedulersHook;
 
 /**
@@ -20,7 +25,78 @@ public final class RxIdler {
    */
   @CheckResult @NonNull
   public static RxJavaSchedulersHook hooks() {
-    return new RxIdlerHook();
+    return hooks(IdlerOptions.DEFAULT);
+  }
+
+  /**
+   * An {@link RxJavaSchedulersHook} which wraps the default schedulers, configured by
+   * {@code options}. If the options have an {@link IdlingResourceGroup}, the group is registered
+   * instead of each scheduler.
+   * <p>
+   * A resource left registered under the same name, for example by a scheduler from before
+   * {@code Schedulers.reset()}, is replaced. The schedulers unregister themselves on
+   * {@code Schedulers.shutdown()} and register again on {@code Schedulers.start()}.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static RxJavaSchedulersHook hooks(@NonNull IdlerOptions options) {
+    if (options == null) throw new NullPointerException("options == null");
+    return new RxIdlerHook(options);
+  }
+
+  /**
+   * Returns a function for {@code RxJavaHooks.setOnScheduleAction} which reports every action run
+   * by any scheduler to one {@link IdlingResourceGroup}, and registers the group with Espresso.
+   * This covers custom schedulers and {@code Schedulers.from()} instances with a single hook.
+   * <p>
+   * <pre><code>
+   * RxJavaHooks.setOnScheduleAction(RxIdler.scheduleAction("RxJava 1.x Work"));
+   * </code></pre>
+   * Note: Actions are only counted while running, as the hook sees neither the delay nor the
+   * unsubscription of an action. See {@link RxTracking#scheduleAction}.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static Func1<Action0, Action0> scheduleAction(@NonNull String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    IdlingResourceGroup group = new IdlingResourceGroup(name);
+    IdlingRegistrations.registerReplacing(group);
+    return RxTracking.scheduleAction(group);
+  }
+
+  /**
+   * Returns a transformer which reports each subscription as busy from subscribe until a terminal
+   * event or unsubscription, for sources which deliver on their own threads and never reach a
+   * wrapped scheduler. Subscriptions count toward the {@link IdlingResourceGroup} named
+   * {@code name}, which is registered with Espresso the first time it is used.
+   * <p>
+   * <pre><code>
+   * api.user(id)
+   *     .compose(RxIdler.&lt;User&gt;observableTransformer("Network"))
+   *     .subscribe(observer);
+   * </code></pre>
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static <T> Observable.Transformer<T, T> observableTransformer(@NonNull String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    return RxTracking.observableTransformer(IdlingRegistrations.group(name));
+  }
+
+  /** Like {@link #observableTransformer(String)}, but for a {@link Single}. */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static <T> Single.Transformer<T, T> singleTransformer(@NonNull String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    return RxTracking.singleTransformer(IdlingRegistrations.group(name));
+  }
+
+  /** Like {@link #observableTransformer(String)}, but for a {@link Completable}. */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static Completable.Transformer completableTransformer(@NonNull String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    return RxTracking.completableTransformer(IdlingRegistrations.group(name));
   }
 
   /**
@@ -29,12 +105,25 @@ public final class RxIdler {
    * returned instance with Espresso before it will be used. Only work scheduled on the returned
    * instance directly will be registered.
    */
-  @SuppressWarnings("ConstantConditions") // Public API guarding.
   @CheckResult @NonNull
   public static IdlingResourceScheduler wrap(@NonNull Scheduler scheduler, @NonNull String name) {
+    return wrap(scheduler, name, IdlerOptions.DEFAULT);
+  }
+
+  /**
+   * Wraps the supplied {@link Scheduler} into one which also implements {@link IdlingResource},
+   * configured by {@code options}. You must
+   * {@linkplain IdlingRegistry#register(IdlingResource...) register} the returned instance, or the
+   * options' {@linkplain IdlerOptions.Builder#group group}, with Espresso before it will be used.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static IdlingResourceScheduler wrap(@NonNull Scheduler scheduler, @NonNull String name,
+      @NonNull IdlerOptions options) {
     if (scheduler == null) throw new NullPointerException("scheduler == null");
     if (name == null) throw new NullPointerException("name == null");
-    return new DelegatingIdlingResourceScheduler(scheduler, name);
+    if (options == null) throw new NullPointerException("options == null");
+    return new DelegatingIdlingResourceScheduler(RxTracking.wrap(scheduler, name, options));
   }
 
   private RxIdler() {
@@ -1,18 +1,28 @@
 package com.squareup.rx.idler;
 
 import androidx.test.espresso.IdlingResource;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
 import org.junit.Test;
 import rx.Scheduler;
+import rx.Subscription;
 import rx.functions.Action0;
+import rx.schedulers.Schedulers;
 import rx.schedulers.TestScheduler;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public final class DelegatingIdlingResourceSchedulerTest {
   private final TestScheduler delegate = new TestScheduler();
@@ -37,6 +47,27 @@ public final class DelegatingIdlingResourceSchedulerTest {
     assertIdle(0);
   }
 
+  @Test public void addedListenerNotifiedAlongsideEspresso() {
+    final AtomicInteger addedCount = new AtomicInteger();
+    IdleListener added = new IdleListener() {
+      @Override public void onIdle() {
+        addedCount.incrementAndGet();
+      }
+    };
+    scheduler.addIdleListener(added);
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    assertIdle(1);
+    assertEquals(1, addedCount.get());
+
+    scheduler.removeIdleListener(added);
+    worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    assertIdle(2);
+    assertEquals(1, addedCount.get());
+  }
+
   @Test public void scheduledWorkReportsBusy() {
     Scheduler.Worker worker = scheduler.createWorker();
     worker.schedule(new CountingAction());
@@ -120,6 +151,622 @@ public final class DelegatingIdlingResourceSchedulerTest {
     assertIdle(0);
   }
 
+  @Test public void completedWorkIsRemovedFromWorker() {
+    Scheduler.Worker worker = scheduler.createWorker();
+    Subscription subscription = worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    // Removal from the worker's CompositeSubscription unsubscribes the completed work.
+    assertTrue(subscription.isUnsubscribed());
+    assertFalse(worker.isUnsubscribed());
+  }
+
+  @Test public void stripedCounterReportsBusyUntilAllWorkCompletes() {
+    IdlingResourceScheduler scheduler = RxIdler.wrap(delegate, "Bob",
+        new IdlerOptions.Builder().stripedCounter(true).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    worker.schedule(new CountingAction());
+    assertFalse(scheduler.isIdleNow());
+    worker.schedule(new CountingAction()).unsubscribe();
+    assertFalse(scheduler.isIdleNow());
+    delegate.triggerActions();
+    assertTrue(scheduler.isIdleNow());
+  }
+
+  @Test public void stripedCounterReachesIdleAcrossThreads() throws InterruptedException {
+    final IdlingResourceScheduler scheduler = RxIdler.wrap(Schedulers.computation(), "Bob",
+        new IdlerOptions.Builder().stripedCounter(true).build());
+    final AtomicInteger idleCount = new AtomicInteger();
+    scheduler.registerIdleTransitionCallback(new IdlingResource.ResourceCallback() {
+      @Override public void onTransitionToIdle() {
+        idleCount.incrementAndGet();
+      }
+    });
+    int threads = 4;
+    final int tasks = 10000;
+    final CountDownLatch latch = new CountDownLatch(threads * tasks);
+    final Action0 task = new Action0() {
+      @Override public void call() {
+        latch.countDown();
+      }
+    };
+    for (int i = 0; i < threads; i++) {
+      final Scheduler.Worker worker = scheduler.createWorker();
+      worker.schedule(new Action0() {
+        @Override public void call() {
+          for (int j = 0; j < tasks; j++) {
+            worker.schedule(task);
+          }
+        }
+      });
+    }
+    assertTrue(latch.await(10, SECONDS));
+    long deadline = System.nanoTime() + SECONDS.toNanos(10);
+    while (!scheduler.isIdleNow() && System.nanoTime() < deadline) {
+      Thread.yield();
+    }
+    assertTrue(scheduler.isIdleNow());
+    assertTrue(idleCount.get() > 0);
+  }
+
+  @Test public void lookAheadWorkWithinWindowReportsBusy() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().lookAhead(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    CountingAction action = new CountingAction();
+    worker.schedule(action, 100, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertEquals(1, action.count());
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void lookAheadWorkBeyondWindowReportsBusyOnceWithinWindow() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().lookAhead(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    CountingAction action = new CountingAction();
+    worker.schedule(action, 1, SECONDS);
+    assertTrue(scheduler.isIdleNow());
+    delegate.advanceTimeBy(899, MILLISECONDS);
+    assertTrue(scheduler.isIdleNow());
+    delegate.advanceTimeBy(1, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertEquals(1, action.count());
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void lookAheadWorkEntersWindowInDueOrder() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().lookAhead(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction(), 2, SECONDS);
+    worker.schedule(new CountingAction(), 1, SECONDS);
+    delegate.advanceTimeBy(900, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertTrue(scheduler.isIdleNow());
+    delegate.advanceTimeBy(900, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(2, idleCount.get());
+  }
+
+  @Test public void lookAheadWorkUnsubscribedBeforeWindowReportsIdle() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().lookAhead(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction(), 1, SECONDS).unsubscribe();
+    delegate.advanceTimeBy(1, SECONDS);
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+  }
+
+  @Test public void lookAheadWorkUnsubscribedWithinWindowReportsIdle() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().lookAhead(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    Subscription subscription = worker.schedule(new CountingAction(), 1, SECONDS);
+    delegate.advanceTimeBy(950, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    subscription.unsubscribe();
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void busyPolicyIgnoredWorkReportsIdle() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().busyPolicy(fixedPolicy(BusyPolicy.Busy.IGNORE)).build());
+    IdleCheckingAction action = new IdleCheckingAction(scheduler);
+    scheduler.createWorker().schedule(action);
+    assertTrue(scheduler.isIdleNow());
+    delegate.triggerActions();
+    assertTrue(action.idleWhileRunning);
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+  }
+
+  @Test public void busyPolicyWhileRunningWorkReportsBusyOnlyWhileRunning() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(new IdlerOptions.Builder()
+        .lookAhead(100, MILLISECONDS)
+        .busyPolicy(fixedPolicy(BusyPolicy.Busy.WHILE_RUNNING))
+        .build());
+    IdleCheckingAction action = new IdleCheckingAction(scheduler);
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(action);
+    worker.schedule(new CountingAction(), 50, MILLISECONDS);
+    assertTrue(scheduler.isIdleNow());
+    delegate.triggerActions();
+    assertFalse(action.idleWhileRunning);
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void busyPolicyWhileRunningWorkUnsubscribedReportsIdle() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(new IdlerOptions.Builder()
+        .busyPolicy(fixedPolicy(BusyPolicy.Busy.WHILE_RUNNING))
+        .build());
+    scheduler.createWorker().schedule(new CountingAction()).unsubscribe();
+    delegate.triggerActions();
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+  }
+
+  @Test public void busyPolicySeesTaskDelayAndPeriod() {
+    final List<Object> decisions = new ArrayList<>();
+    IdlingResourceScheduler scheduler = wrapWithCallback(new IdlerOptions.Builder()
+        .busyPolicy(new BusyPolicy() {
+          @Override public Busy decide(Action0 task, long delayNanos, long periodNanos) {
+            decisions.add(task);
+            decisions.add(delayNanos);
+            decisions.add(periodNanos);
+            return Busy.COUNT;
+          }
+        })
+        .build());
+    CountingAction action = new CountingAction();
+    scheduler.createWorker().schedulePeriodically(action, 1, 2, SECONDS);
+    assertEquals(Arrays.<Object>asList(action, SECONDS.toNanos(1), SECONDS.toNanos(2)),
+        decisions);
+  }
+
+  @Test public void metricsDisabledByDefault() {
+    assertNull(scheduler.getMetrics());
+  }
+
+  @Test public void metricsCountWork() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().metrics(true).build());
+    IdlerMetrics metrics = scheduler.getMetrics();
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    worker.schedule(new CountingAction(), 1, SECONDS);
+    worker.schedule(new CountingAction(), 2, SECONDS).unsubscribe();
+    worker.schedulePeriodically(new CountingAction(), 0, 1, SECONDS);
+    assertEquals(1, metrics.immediateCount());
+    assertEquals(2, metrics.delayedCount());
+    assertEquals(1, metrics.periodicCount());
+    assertEquals(1, metrics.unsubscribedBeforeRunCount());
+    assertEquals(0, metrics.runCount());
+
+    delegate.triggerActions();
+    assertEquals(2, metrics.runCount());
+    assertEquals(1, metrics.idleTransitionCount());
+
+    delegate.advanceTimeBy(1, SECONDS);
+    assertEquals(4, metrics.runCount());
+    assertEquals(3, metrics.idleTransitionCount());
+    assertTrue(metrics.busyNanos() >= metrics.longestBusyNanos());
+    worker.unsubscribe();
+    assertEquals(1, metrics.unsubscribedBeforeRunCount());
+  }
+
+  @Test public void latencyDisabledByDefault() {
+    assertNull(scheduler.getLatency());
+  }
+
+  @Test public void latencyHistogramsRecordEachRun() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().latencyHistograms(true).build());
+    IdlerLatency latency = scheduler.getLatency();
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    worker.schedule(new CountingAction(), 1, SECONDS);
+    worker.schedulePeriodically(new CountingAction(), 1, 1, SECONDS);
+    delegate.triggerActions();
+    assertEquals(1, latency.queueDelay().count());
+    assertEquals(1, latency.runTime().count());
+    assertNull(latency.cpuTime());
+
+    delegate.advanceTimeBy(2, SECONDS);
+    assertEquals(4, latency.queueDelay().count());
+    assertEquals(4, latency.runTime().count());
+  }
+
+  @Test public void threadCpuTimeRecordsEachRun() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(new IdlerOptions.Builder()
+        .latencyHistograms(true)
+        .threadCpuTime(true)
+        .build());
+    scheduler.createWorker().schedule(new CountingAction());
+    delegate.triggerActions();
+    assertEquals(1, scheduler.getLatency().cpuTime().count());
+  }
+
+  @Test public void metricsTrackLiveTaskCounts() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().metrics(true).build());
+    final IdlerMetrics metrics = scheduler.getMetrics();
+    final AtomicInteger runningWhileRunning = new AtomicInteger();
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new Action0() {
+      @Override public void call() {
+        runningWhileRunning.set(metrics.runningTasks());
+      }
+    });
+    worker.schedule(new CountingAction());
+    worker.schedule(new CountingAction(), 1, SECONDS);
+    Subscription delayed = worker.schedule(new CountingAction(), 2, SECONDS);
+    Subscription periodic = worker.schedulePeriodically(new CountingAction(), 0, 1, SECONDS);
+    assertTaskCounts(metrics, 3, 0, 2, 1);
+
+    delayed.unsubscribe();
+    assertTaskCounts(metrics, 3, 0, 1, 1);
+
+    delegate.triggerActions();
+    assertEquals(1, runningWhileRunning.get());
+    assertTaskCounts(metrics, 0, 0, 2, 1);
+
+    delegate.advanceTimeBy(1, SECONDS);
+    assertTaskCounts(metrics, 0, 0, 1, 1);
+
+    periodic.unsubscribe();
+    assertTaskCounts(metrics, 0, 0, 0, 0);
+  }
+
+  @Test public void inFlightTrackingDisabledByDefault() {
+    assertNull(scheduler.dumpInFlightWork());
+  }
+
+  @Test public void inFlightWorkIsDumpedUntilCompleteOrUnsubscribed() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().trackInFlight(8).build());
+    assertEquals("0 in-flight tasks on Bob (0 not tracked while full):",
+        scheduler.dumpInFlightWork());
+
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    Subscription delayed = worker.schedule(new CountingAction(), 1, SECONDS);
+    String dump = scheduler.dumpInFlightWork();
+    assertTrue(dump, dump.startsWith("2 in-flight tasks on Bob (0 not tracked while full):"));
+    assertTrue(dump, dump.contains("\n  SCHEDULED for "));
+    assertTrue(dump, dump.contains("\n  WAITING for "));
+    assertTrue(dump, dump.contains(CountingAction.class.getName()));
+
+    delegate.triggerActions();
+    dump = scheduler.dumpInFlightWork();
+    assertTrue(dump, dump.startsWith("1 in-flight tasks on Bob"));
+    assertFalse(dump, dump.contains("SCHEDULED"));
+
+    delayed.unsubscribe();
+    assertEquals("0 in-flight tasks on Bob (0 not tracked while full):",
+        scheduler.dumpInFlightWork());
+  }
+
+  @Test public void inFlightWorkBeyondCapacityIsCounted() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().trackInFlight(2).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    worker.schedule(new CountingAction());
+    worker.schedule(new CountingAction());
+    String dump = scheduler.dumpInFlightWork();
+    assertTrue(dump, dump.startsWith("2 in-flight tasks on Bob (1 not tracked while full):"));
+
+    delegate.triggerActions();
+    assertIdle(1);
+  }
+
+  @Test public void inFlightDumpIncludesSampledStacks() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().trackInFlight(8).sampleStacks(1).build());
+    scheduler.createWorker().schedule(new CountingAction());
+    String dump = scheduler.dumpInFlightWork();
+    assertTrue(dump, dump.contains("inFlightDumpIncludesSampledStacks"));
+  }
+
+  @Test public void coalesceIdleReportsAfterDelay() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().coalesceIdle(100, MILLISECONDS).build());
+    scheduler.createWorker().schedule(new CountingAction());
+    assertFalse(scheduler.isIdleNow());
+    delegate.triggerActions();
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void coalesceIdleReportsRepeatedTransitionsOnce() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().coalesceIdle(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    for (int i = 0; i < 3; i++) {
+      worker.schedule(new CountingAction());
+      delegate.triggerActions();
+    }
+    assertTrue(scheduler.isIdleNow());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void coalesceIdleSkipsReportWhenBusyAgain() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(new IdlerOptions.Builder()
+        .coalesceIdle(100, MILLISECONDS)
+        .lookAhead(100, MILLISECONDS)
+        .build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction(), 150, MILLISECONDS);
+    worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    assertTrue(scheduler.isIdleNow());
+
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+
+    delegate.advanceTimeBy(50, MILLISECONDS);
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void groupStaysBusyAcrossHandOff() {
+    IdlingResourceGroup group = new IdlingResourceGroup("Group");
+    final AtomicInteger groupIdleCount = new AtomicInteger();
+    group.registerIdleTransitionCallback(new IdlingResource.ResourceCallback() {
+      @Override public void onTransitionToIdle() {
+        groupIdleCount.incrementAndGet();
+      }
+    });
+    IdlerOptions options = new IdlerOptions.Builder().group(group).build();
+    TestScheduler otherDelegate = new TestScheduler();
+    IdlingResourceScheduler first = RxIdler.wrap(delegate, "First", options);
+    final IdlingResourceScheduler second = RxIdler.wrap(otherDelegate, "Second", options);
+
+    first.createWorker().schedule(new Action0() {
+      @Override public void call() {
+        second.createWorker().schedule(new CountingAction());
+      }
+    });
+    assertFalse(group.isIdleNow());
+    delegate.triggerActions();
+    assertFalse(group.isIdleNow());
+    assertEquals(0, groupIdleCount.get());
+
+    otherDelegate.triggerActions();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, groupIdleCount.get());
+  }
+
+  @Test public void virtualTimeSkipsToDelayedWorkWhenIdle() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().virtualTime(true).build());
+    CountingAction action = new CountingAction();
+    scheduler.createWorker().schedule(action, 30, SECONDS);
+    assertFalse(scheduler.isIdleNow());
+    assertEquals(SECONDS.toMillis(30), scheduler.now());
+    assertEquals(0, action.count());
+
+    delegate.triggerActions();
+    assertEquals(1, action.count());
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void virtualTimeDoesNotSkipToPeriodicWork() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().virtualTime(true).build());
+    CountingAction action = new CountingAction();
+    scheduler.createWorker().schedulePeriodically(action, 1, 1, SECONDS);
+    assertTrue(scheduler.isIdleNow());
+    assertFalse(scheduler.advanceTimeToNext());
+    assertEquals(0, action.count());
+  }
+
+  @Test public void virtualTimeAdvanceRunsDueWork() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().virtualTime(true).build());
+    CountingAction periodic = new CountingAction();
+    CountingAction delayed = new CountingAction();
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedulePeriodically(periodic, 1, 1, SECONDS);
+    worker.schedule(delayed, 5, SECONDS);
+
+    scheduler.advanceTimeBy(3, SECONDS);
+    delegate.triggerActions();
+    assertEquals(3, periodic.count());
+    assertEquals(0, delayed.count());
+
+    assertTrue(scheduler.advanceTimeToNext());
+    delegate.triggerActions();
+    assertEquals(5, periodic.count());
+    assertEquals(1, delayed.count());
+    assertEquals(5, MILLISECONDS.toSeconds(scheduler.now()));
+  }
+
+  @Test public void virtualTimeRunsDelayedWorkInRealTime() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().virtualTime(true).build());
+    CountingAction action = new CountingAction();
+    scheduler.createWorker().schedule(action, 1, SECONDS);
+    delegate.advanceTimeBy(1, SECONDS);
+    assertEquals(1, action.count());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void virtualTimeUnsubscribedWorkIsNotSkippedTo() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().virtualTime(true).build());
+    CountingAction action = new CountingAction();
+    scheduler.createWorker().schedule(action, 30, SECONDS).unsubscribe();
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, MILLISECONDS.toSeconds(scheduler.now()));
+    delegate.advanceTimeBy(30, SECONDS);
+    assertEquals(0, action.count());
+  }
+
+  @Test public void advanceTimeWithoutVirtualTimeFails() {
+    try {
+      scheduler.advanceTimeBy(1, SECONDS);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Virtual time not enabled", e.getMessage());
+    }
+  }
+
+  @Test public void compressTimeDividesDelays() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().compressTime(10).build());
+    CountingAction delayed = new CountingAction();
+    CountingAction periodic = new CountingAction();
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(delayed, 10, SECONDS);
+    worker.schedulePeriodically(periodic, 10, 10, SECONDS);
+    delegate.advanceTimeBy(999, MILLISECONDS);
+    assertEquals(0, delayed.count());
+    assertEquals(0, periodic.count());
+
+    delegate.advanceTimeBy(1, MILLISECONDS);
+    assertEquals(1, delayed.count());
+    assertEquals(1, periodic.count());
+    delegate.advanceTimeBy(2, SECONDS);
+    assertEquals(3, periodic.count());
+  }
+
+  @Test public void compressTimeScalesNow() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().compressTime(10).build());
+    delegate.advanceTimeBy(1, SECONDS);
+    assertEquals(SECONDS.toMillis(10), scheduler.now());
+    assertEquals(SECONDS.toMillis(10), scheduler.createWorker().now());
+  }
+
+  @Test public void traceRecordsWorkAndTransitions() throws IOException {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().trace(64).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    worker.schedule(new CountingAction(), 1, SECONDS).unsubscribe();
+    delegate.triggerActions();
+
+    StringWriter writer = new StringWriter();
+    scheduler.writeTrace(writer);
+    String trace = writer.toString();
+    String label = CountingAction.class.getName();
+    assertTrue(trace, trace.startsWith("{\"traceEvents\":["));
+    assertTrue(trace, trace.contains("{\"name\":\"schedule " + label + "\",\"cat\":\"Bob\""));
+    assertTrue(trace, trace.contains("{\"name\":\"unsubscribe " + label + "\""));
+    assertTrue(trace, trace.contains("{\"name\":\"" + label + "\",\"cat\":\"Bob\",\"ph\":\"B\""));
+    assertTrue(trace, trace.contains("{\"name\":\"" + label + "\",\"cat\":\"Bob\",\"ph\":\"E\""));
+    assertTrue(trace, trace.contains("{\"name\":\"busy\""));
+    assertTrue(trace, trace.contains("{\"name\":\"idle\""));
+    assertTrue(trace, trace.contains("{\"name\":\"thread_name\",\"ph\":\"M\""));
+    assertTrue(trace, trace.endsWith("]}\n"));
+  }
+
+  @Test public void traceRecordsNoUnsubscribeForCompletedWork() throws IOException {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().trace(64).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    Subscription subscription = worker.schedule(new CountingAction());
+    delegate.triggerActions();
+    assertTrue(subscription.isUnsubscribed());
+    subscription.unsubscribe();
+
+    StringWriter writer = new StringWriter();
+    scheduler.writeTrace(writer);
+    String trace = writer.toString();
+    assertTrue(trace, trace.contains("{\"name\":\"idle\""));
+    assertFalse(trace, trace.contains("unsubscribe"));
+  }
+
+  @Test public void traceKeepsMostRecentEvents() throws IOException {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().trace(2).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction(), 1, SECONDS);
+    worker.schedule(new CountingAction(), 2, SECONDS);
+    worker.schedule(new CountingAction(), 3, SECONDS);
+
+    StringWriter writer = new StringWriter();
+    scheduler.writeTrace(writer);
+    String trace = writer.toString();
+    assertEquals(trace, 2, trace.split("\"cat\"").length - 1);
+    assertTrue(trace, trace.contains("\"args\":{\"task\":3}"));
+    assertFalse(trace, trace.contains("\"args\":{\"task\":1}"));
+  }
+
+  @Test public void writeTraceWithoutTracingFails() throws IOException {
+    try {
+      scheduler.writeTrace(new StringWriter());
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Tracing not enabled", e.getMessage());
+    }
+  }
+
+  @Test public void awaitIdleReturnsImmediatelyWhenIdle() throws InterruptedException {
+    assertTrue(scheduler.awaitIdle(0, SECONDS));
+  }
+
+  @Test public void awaitIdleTimesOutWhileBusy() throws InterruptedException {
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    assertFalse(scheduler.awaitIdle(10, MILLISECONDS));
+  }
+
+  @Test public void awaitIdleWakesOnTransitionToIdle() throws InterruptedException {
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    AwaitThread thread = new AwaitThread(scheduler);
+    thread.start();
+    thread.awaitParked();
+    delegate.triggerActions();
+    thread.join(SECONDS.toMillis(10));
+    assertTrue(thread.idle);
+  }
+
+  @Test public void awaitIdleThrowsWhenInterrupted() {
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingAction());
+    Thread.currentThread().interrupt();
+    try {
+      scheduler.awaitIdle(10, SECONDS);
+      fail();
+    } catch (InterruptedException ignored) {
+    }
+  }
+
+  @Test public void awaitAllIdleWaitsForEveryScheduler() throws InterruptedException {
+    TestScheduler otherDelegate = new TestScheduler();
+    IdlingResourceScheduler other = RxIdler.wrap(otherDelegate, "Other");
+    scheduler.createWorker().schedule(new CountingAction());
+    other.createWorker().schedule(new CountingAction());
+    assertFalse(IdlingResourceScheduler.awaitAllIdle(10, MILLISECONDS, scheduler, other));
+
+    delegate.triggerActions();
+    assertFalse(IdlingResourceScheduler.awaitAllIdle(10, MILLISECONDS, scheduler, other));
+
+    otherDelegate.triggerActions();
+    assertTrue(IdlingResourceScheduler.awaitAllIdle(0, SECONDS, scheduler, other));
+  }
+
   @Test public void finishingWorkWithoutRegisteredCallbackDoesNotCrash() {
     IdlingResourceScheduler scheduler = RxIdler.wrap(delegate, "Bob");
     Scheduler.Worker worker = scheduler.createWorker();
@@ -127,6 +774,32 @@ public final class DelegatingIdlingResourceSchedulerTest {
     delegate.triggerActions();
   }
 
+  private IdlingResourceScheduler wrapWithCallback(IdlerOptions options) {
+    IdlingResourceScheduler scheduler = RxIdler.wrap(delegate, "Bob", options);
+    scheduler.registerIdleTransitionCallback(new IdlingResource.ResourceCallback() {
+      @Override public void onTransitionToIdle() {
+        idleCount.incrementAndGet();
+      }
+    });
+    return scheduler;
+  }
+
+  private static BusyPolicy fixedPolicy(final BusyPolicy.Busy busy) {
+    return new BusyPolicy() {
+      @Override public Busy decide(Action0 task, long delayNanos, long periodNanos) {
+        return busy;
+      }
+    };
+  }
+
+  private static void assertTaskCounts(IdlerMetrics metrics, int queued, int running, int delayed,
+      int periodic) {
+    assertEquals(queued, metrics.queuedTasks());
+    assertEquals(running, metrics.runningTasks());
+    assertEquals(delayed, metrics.delayedTasks());
+    assertEquals(periodic, metrics.periodicTasks());
+  }
+
   private void assertBusy() {
     assertFalse(scheduler.isIdleNow());
   }
@@ -135,4 +808,42 @@ public final class DelegatingIdlingResourceSchedulerTest {
     assertTrue(scheduler.isIdleNow());
     assertEquals(count, idleCount.get());
   }
+
+  /** Records whether its scheduler reported idle while it was running. */
+  private static final class IdleCheckingAction implements Action0 {
+    private final IdlingResourceScheduler scheduler;
+    volatile boolean idleWhileRunning;
+
+    IdleCheckingAction(IdlingResourceScheduler scheduler) {
+      this.scheduler = scheduler;
+    }
+
+    @Override public void call() {
+      idleWhileRunning = scheduler.isIdleNow();
+    }
+  }
+
+  /** Waits for a scheduler to become idle and exposes when it has parked. */
+  private static final class AwaitThread extends Thread {
+    private final IdlingResourceScheduler scheduler;
+    volatile boolean idle;
+
+    AwaitThread(IdlingResourceScheduler scheduler) {
+      this.scheduler = scheduler;
+    }
+
+    @Override public void run() {
+      try {
+        idle = scheduler.awaitIdle(10, SECONDS);
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    void awaitParked() throws InterruptedException {
+      while (getState() != State.TIMED_WAITING) {
+        Thread.sleep(1);
+      }
+    }
+  }
 }
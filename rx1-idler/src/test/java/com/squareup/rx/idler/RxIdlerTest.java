@@ -1,12 +1,110 @@
 package com.squareup.rx.idler;
 
+import androidx.test.espresso.IdlingRegistry;
+import androidx.test.espresso.IdlingResource;
 import org.junit.Test;
+import rx.Completable;
+import rx.Scheduler;
+import rx.internal.schedulers.SchedulerLifecycle;
+import rx.plugins.RxJavaSchedulersHook;
 import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public final class RxIdlerTest {
+  @Test public void nullHooksArgumentsFails() {
+    try {
+      RxIdler.hooks(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("options == null", e.getMessage());
+    }
+  }
+
+  @Test public void scheduleActionNullNameFails() {
+    try {
+      RxIdler.scheduleAction(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+  }
+
+  @Test public void scheduleActionRegistersGroup() {
+    RxIdler.scheduleAction("Work");
+    IdlingRegistry registry = IdlingRegistry.getInstance();
+    IdlingResource registered = null;
+    for (IdlingResource resource : registry.getResources()) {
+      if (resource.getName().equals("Work")) {
+        registered = resource;
+      }
+    }
+    try {
+      assertTrue(registered instanceof IdlingResourceGroup);
+      assertTrue(registered.isIdleNow());
+    } finally {
+      registry.unregister(registered);
+    }
+  }
+
+  @Test public void transformerNullNameFails() {
+    try {
+      RxIdler.observableTransformer(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+    try {
+      RxIdler.singleTransformer(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+    try {
+      RxIdler.completableTransformer(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+  }
+
+  @Test public void transformersShareRegisteredGroup() {
+    PublishSubject<String> first = PublishSubject.create();
+    PublishSubject<String> second = PublishSubject.create();
+    first.compose(RxIdler.<String>observableTransformer("Network")).subscribe();
+    Completable.fromObservable(second)
+        .compose(RxIdler.completableTransformer("Network"))
+        .subscribe();
+    IdlingResource registered = registeredNamed("Network");
+    try {
+      assertTrue(registered instanceof IdlingResourceGroup);
+      assertFalse(registered.isIdleNow());
+      first.onCompleted();
+      assertFalse(registered.isIdleNow());
+      second.onCompleted();
+      assertTrue(registered.isIdleNow());
+    } finally {
+      IdlingRegistry.getInstance().unregister(registered);
+    }
+  }
+
+  @Test public void transformerReplacesResourceWithSameName() {
+    IdlingResourceScheduler scheduler = RxIdler.wrap(new TestScheduler(), "Network");
+    IdlingRegistry.getInstance().register(scheduler);
+    RxIdler.singleTransformer("Network");
+    IdlingResource registered = registeredNamed("Network");
+    try {
+      assertTrue(registered instanceof IdlingResourceGroup);
+      assertFalse(IdlingRegistry.getInstance().getResources().contains(scheduler));
+    } finally {
+      IdlingRegistry.getInstance().unregister(registered);
+    }
+  }
+
   @Test public void nullWrapArgumentsFails() {
     try {
       RxIdler.wrap(null, "Bob");
@@ -20,5 +118,61 @@ public final class RxIdlerTest {
     } catch (NullPointerException e) {
       assertEquals("name == null", e.getMessage());
     }
+    try {
+      RxIdler.wrap(new TestScheduler(), "Bob", null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("options == null", e.getMessage());
+    }
+  }
+
+  @Test public void hooksReplaceResourceWithSameName() {
+    RxJavaSchedulersHook hooks = RxIdler.hooks();
+    Scheduler first = hooks.getComputationScheduler();
+    Scheduler second = hooks.getComputationScheduler();
+    IdlingRegistry registry = IdlingRegistry.getInstance();
+    try {
+      assertFalse(registry.getResources().contains(first));
+      assertTrue(registry.getResources().contains(second));
+    } finally {
+      ((SchedulerLifecycle) first).shutdown();
+      ((SchedulerLifecycle) second).shutdown();
+    }
+  }
+
+  @Test public void shutdownUnregistersAndStartRegistersAgain() {
+    SchedulerLifecycle scheduler = (SchedulerLifecycle) RxIdler.hooks().getComputationScheduler();
+    IdlingRegistry registry = IdlingRegistry.getInstance();
+    try {
+      assertTrue(registry.getResources().contains(scheduler));
+      scheduler.shutdown();
+      assertFalse(registry.getResources().contains(scheduler));
+      scheduler.start();
+      assertTrue(registry.getResources().contains(scheduler));
+    } finally {
+      scheduler.shutdown();
+    }
+  }
+
+  @Test public void hooksWithGroupRegistersGroup() {
+    IdlingResourceGroup group = new IdlingResourceGroup("Group");
+    IdlerOptions options = new IdlerOptions.Builder().group(group).build();
+    Scheduler scheduler = RxIdler.hooks(options).getComputationScheduler();
+    IdlingRegistry registry = IdlingRegistry.getInstance();
+    try {
+      assertTrue(registry.getResources().contains(group));
+      assertFalse(registry.getResources().contains(scheduler));
+    } finally {
+      registry.unregister(group);
+    }
+  }
+
+  private static IdlingResource registeredNamed(String name) {
+    for (IdlingResource resource : IdlingRegistry.getInstance().getResources()) {
+      if (resource.getName().equals(name)) {
+        return resource;
+      }
+    }
+    return null;
   }
 }
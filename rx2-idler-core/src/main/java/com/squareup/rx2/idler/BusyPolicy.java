@@ -0,0 +1,41 @@
+package com.squareup.rx2.idler;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides once per scheduled task whether it keeps the scheduler busy. Use this to stop known
+ * background work, such as an analytics flush or high-frequency polling, from holding up every
+ * idle wait. Set with {@link IdlerOptions.Builder#busyPolicy(BusyPolicy)}.
+ * <p>
+ * <pre><code>
+ * BusyPolicy policy = new BusyPolicy() {
+ *   &#64;Override public Busy decide(Runnable task, long delayNanos, long periodNanos) {
+ *     return task instanceof BackgroundTask ? Busy.IGNORE : Busy.COUNT;
+ *   }
+ * };
+ * </code></pre>
+ * The policy is called on the scheduling thread for every task, so it should be as cheap as an
+ * {@code instanceof} check against a marker interface.
+ */
+public interface BusyPolicy {
+  /**
+   * Decide how {@code task} is counted. The task is unwrapped from RxJava's own wrappers where
+   * RxJava allows it. {@code delayNanos} is the delay passed to the wrapped scheduler, after any
+   * {@linkplain IdlerOptions.Builder#compressTime compression}, and {@code periodNanos} is zero
+   * unless the task is periodic.
+   */
+  @NonNull Busy decide(@NonNull Runnable task, long delayNanos, long periodNanos);
+
+  enum Busy {
+    /**
+     * Count the task by the usual rules: busy from being scheduled if it is due now or within the
+     * {@linkplain IdlerOptions.Builder#lookAhead look-ahead window}, otherwise busy once it enters
+     * the window or starts running.
+     */
+    COUNT,
+    /** Count the task only while it runs, even if it is due now. */
+    WHILE_RUNNING,
+    /** Never count the task. */
+    IGNORE
+  }
+}
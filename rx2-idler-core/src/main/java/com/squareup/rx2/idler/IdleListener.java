@@ -0,0 +1,10 @@
+package com.squareup.rx2.idler;
+
+/**
+ * Notified when a {@link TrackingScheduler} or {@link TrackingGroup} goes from busy to idle.
+ * Called on the thread which finished the last work, or on the wrapped scheduler when
+ * {@linkplain IdlerOptions.Builder#coalesceIdle coalescing} transitions.
+ */
+public interface IdleListener {
+  void onIdle();
+}
@@ -0,0 +1,41 @@
+package com.squareup.rx2.idler;
+
+import androidx.annotation.RestrictTo;
+import io.reactivex.Scheduler;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Reports transitions to idle from a task on the delegate rather than from the thread which
+ * finished the work. Transitions which happen while a report is pending are folded into it, and
+ * the report is dropped if the scheduler has become busy again by the time it runs.
+ * <p>
+ * A real idle state is never missed: the pending flag is cleared before idleness is re-checked, so
+ * any transition after that check schedules another report.
+ */
+@RestrictTo(LIBRARY)
+final class IdleNotifier implements Runnable {
+  private final Scheduler delegate;
+  private final long delayNanos;
+  private final DelegatingTrackingScheduler scheduler;
+  private final AtomicBoolean pending = new AtomicBoolean();
+
+  IdleNotifier(Scheduler delegate, long delayNanos, DelegatingTrackingScheduler scheduler) {
+    this.delegate = delegate;
+    this.delayNanos = delayNanos;
+    this.scheduler = scheduler;
+  }
+
+  void onIdle() {
+    if (pending.compareAndSet(false, true)) {
+      delegate.scheduleDirect(this, delayNanos, NANOSECONDS);
+    }
+  }
+
+  @Override public void run() {
+    pending.set(false);
+    scheduler.notifyIfIdle();
+  }
+}
@@ -0,0 +1,127 @@
+package com.squareup.rx2.idler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds with fixed log-linear buckets: each power of two is
+ * split into four buckets, so a bucket's width is at most a quarter of its lower bound. Values
+ * above about half an hour share the last bucket. Recording a value allocates nothing. Values may
+ * be read at any time from any thread.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 40;
+  private static final int BUCKETS = SUB_BUCKETS * (MAX_EXPONENT - SUB_BUCKET_BITS + 2);
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  LatencyHistogram() {
+  }
+
+  /** The number of recorded values. */
+  public long count() {
+    return count.get();
+  }
+
+  /** The sum of all recorded values. */
+  public long totalNanos() {
+    return totalNanos.get();
+  }
+
+  /** The largest recorded value. */
+  public long maxNanos() {
+    return maxNanos.get();
+  }
+
+  /**
+   * The value below which {@code percentile} percent of recorded values fall, rounded up to the
+   * upper bound of its bucket but never above {@link #maxNanos()}. Returns 0 if nothing has been
+   * recorded.
+   */
+  public long percentileNanos(double percentile) {
+    if (!(percentile >= 0d && percentile <= 100d)) {
+      throw new IllegalArgumentException("percentile not in [0, 100]: " + percentile);
+    }
+    long total = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts.get(i);
+    }
+    if (total == 0L) {
+      return 0L;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100d));
+    long seen = 0L;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(bucketLimitNanos(i), maxNanos());
+      }
+    }
+    return maxNanos();
+  }
+
+  /** The number of buckets, for use with {@link #bucketLimitNanos} and {@link #countAt}. */
+  public int bucketCount() {
+    return BUCKETS;
+  }
+
+  /** The largest value which falls in bucket {@code index}. */
+  public long bucketLimitNanos(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    if (index == BUCKETS - 1) {
+      return Long.MAX_VALUE;
+    }
+    int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    long lower = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << shift;
+    return lower + (1L << shift) - 1L;
+  }
+
+  /** The number of recorded values in bucket {@code index}. */
+  public long countAt(int index) {
+    return counts.get(index);
+  }
+
+  void record(long nanos) {
+    if (nanos < 0L) {
+      nanos = 0L; // Work on a virtual clock can run before its real due time.
+    }
+    counts.incrementAndGet(indexOf(nanos));
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    for (;;) {
+      long max = maxNanos.get();
+      if (nanos <= max || maxNanos.compareAndSet(max, nanos)) {
+        return;
+      }
+    }
+  }
+
+  static int indexOf(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (nanos >>> shift) & (SUB_BUCKETS - 1);
+    return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+  }
+
+  @Override public String toString() {
+    return "LatencyHistogram{count=" + count()
+        + ", p50=" + percentileNanos(50)
+        + ", p90=" + percentileNanos(90)
+        + ", p99=" + percentileNanos(99)
+        + ", max=" + maxNanos()
+        + '}';
+  }
+}
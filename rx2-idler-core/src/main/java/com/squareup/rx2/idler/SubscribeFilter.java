@@ -0,0 +1,99 @@
+package com.squareup.rx2.idler;
+
+import androidx.annotation.CheckResult;
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Selects the sources whose subscriptions are counted by
+ * {@link Rx2Tracking#installSubscribeHooks(TrackingGroup, SubscribeFilter)}. A source matches on
+ * its class, which for most streams is the last operator applied rather than the code which
+ * created it, so select the custom sources your code subscribes to directly.
+ * <p>
+ * <pre><code>
+ * SubscribeFilter filter = new SubscribeFilter.Builder()
+ *     .sourcePackage("retrofit2.adapter.rxjava2")
+ *     .sourceClass(RoomSource.class)
+ *     .build();
+ * </code></pre>
+ */
+public final class SubscribeFilter {
+  private final Class<?>[] classes;
+  private final String[] packagePrefixes;
+  /** The decision for each source class seen so far, so that each subscribe is a single lookup. */
+  private final ConcurrentHashMap<Class<?>, Boolean> decisions = new ConcurrentHashMap<>();
+
+  SubscribeFilter(Builder builder) {
+    this.classes = builder.classes.toArray(new Class<?>[0]);
+    this.packagePrefixes = builder.packagePrefixes.toArray(new String[0]);
+  }
+
+  /** Returns true if subscriptions to {@code source} should be counted. */
+  boolean matches(Object source) {
+    Class<?> type = source.getClass();
+    Boolean decision = decisions.get(type);
+    if (decision == null) {
+      decision = decide(type);
+      decisions.put(type, decision);
+    }
+    return decision;
+  }
+
+  private boolean decide(Class<?> type) {
+    for (Class<?> selected : classes) {
+      if (selected.isAssignableFrom(type)) {
+        return true;
+      }
+    }
+    String name = type.getName();
+    for (String prefix : packagePrefixes) {
+      if (name.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static final class Builder {
+    final List<Class<?>> classes = new ArrayList<>();
+    final List<String> packagePrefixes = new ArrayList<>();
+
+    public Builder() {
+    }
+
+    /** Count subscriptions to sources which are instances of {@code type}. */
+    @SuppressWarnings("ConstantConditions") // Public API guarding.
+    @NonNull
+    public Builder sourceClass(@NonNull Class<?> type) {
+      if (type == null) throw new NullPointerException("type == null");
+      classes.add(type);
+      return this;
+    }
+
+    /**
+     * Count subscriptions to sources whose class is declared in {@code packageName} or one of its
+     * subpackages.
+     */
+    @SuppressWarnings("ConstantConditions") // Public API guarding.
+    @NonNull
+    public Builder sourcePackage(@NonNull String packageName) {
+      if (packageName == null) throw new NullPointerException("packageName == null");
+      packagePrefixes.add(packageName + '.');
+      return this;
+    }
+
+    /**
+     * @throws IllegalStateException if no class or package was selected. Counting every
+     * subscription would include every operator and any stream which never completes.
+     */
+    @CheckResult @NonNull
+    public SubscribeFilter build() {
+      if (classes.isEmpty() && packagePrefixes.isEmpty()) {
+        throw new IllegalStateException("No source classes or packages selected");
+      }
+      return new SubscribeFilter(this);
+    }
+  }
+}
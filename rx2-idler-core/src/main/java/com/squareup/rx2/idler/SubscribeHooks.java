@@ -0,0 +1,394 @@
+package com.squareup.rx2.idler;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import io.reactivex.Completable;
+import io.reactivex.CompletableObserver;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.Maybe;
+import io.reactivex.MaybeObserver;
+import io.reactivex.Observable;
+import io.reactivex.Observer;
+import io.reactivex.Single;
+import io.reactivex.SingleObserver;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.BiFunction;
+import io.reactivex.plugins.RxJavaPlugins;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * Subscribe hooks which count each live subscription to a {@linkplain SubscribeFilter selected}
+ * source in a {@link TrackingGroup}. A subscription is busy from {@code onSubscribe} until a
+ * terminal event has been delivered, so that follow-up work started downstream keeps the group
+ * busy, or until disposal.
+ * <p>
+ * Subscriptions to other sources pass through without allocating. A selected one allocates only
+ * its wrapper, which is also the disposable handed downstream. Counts go to per-thread stripes
+ * and reach the group only when a stripe moves between zero and non-zero.
+ * <p>
+ * The wrapper hides the upstream's queue from the operator downstream of a selected source, so
+ * the two can no longer fuse. That operator falls back to its own queue or to a subscription
+ * without fusion, which costs an allocation and some throughput.
+ */
+@RestrictTo(LIBRARY)
+@SuppressWarnings("rawtypes") // RxJavaPlugins declares its subscribe hooks with raw types.
+final class SubscribeHooks {
+  /** The hooks which the installed functions count subscriptions with. */
+  @Nullable private static volatile SubscribeHooks current;
+
+  /**
+   * Install hooks for all five source types, running after any hooks already installed. Hooks from
+   * an earlier call which are still installed stay in place and count with the new group and
+   * filter instead, so that no subscription is counted twice.
+   */
+  static void install(TrackingGroup group, SubscribeFilter filter) {
+    current = new SubscribeHooks(group, filter);
+
+    if (!(RxJavaPlugins.getOnObservableSubscribe() instanceof Hook)) {
+      RxJavaPlugins.setOnObservableSubscribe(
+          new Hook<Observable, Observer>(RxJavaPlugins.getOnObservableSubscribe()) {
+            @SuppressWarnings("unchecked")
+            @Override Observer wrap(SubscribeHooks hooks, Observer observer) {
+              return new TrackedObserver(hooks, observer);
+            }
+          });
+    }
+    if (!(RxJavaPlugins.getOnFlowableSubscribe() instanceof Hook)) {
+      RxJavaPlugins.setOnFlowableSubscribe(
+          new Hook<Flowable, Subscriber>(RxJavaPlugins.getOnFlowableSubscribe()) {
+            @SuppressWarnings("unchecked")
+            @Override Subscriber wrap(SubscribeHooks hooks, Subscriber subscriber) {
+              return new TrackedSubscriber(hooks, subscriber);
+            }
+          });
+    }
+    if (!(RxJavaPlugins.getOnSingleSubscribe() instanceof Hook)) {
+      RxJavaPlugins.setOnSingleSubscribe(
+          new Hook<Single, SingleObserver>(RxJavaPlugins.getOnSingleSubscribe()) {
+            @SuppressWarnings("unchecked")
+            @Override SingleObserver wrap(SubscribeHooks hooks, SingleObserver observer) {
+              return new TrackedSingleObserver(hooks, observer);
+            }
+          });
+    }
+    if (!(RxJavaPlugins.getOnMaybeSubscribe() instanceof Hook)) {
+      RxJavaPlugins.setOnMaybeSubscribe(
+          new Hook<Maybe, MaybeObserver>(RxJavaPlugins.getOnMaybeSubscribe()) {
+            @SuppressWarnings("unchecked")
+            @Override MaybeObserver wrap(SubscribeHooks hooks, MaybeObserver observer) {
+              return new TrackedMaybeObserver(hooks, observer);
+            }
+          });
+    }
+    if (!(RxJavaPlugins.getOnCompletableSubscribe() instanceof Hook)) {
+      RxJavaPlugins.setOnCompletableSubscribe(
+          new Hook<Completable, CompletableObserver>(RxJavaPlugins.getOnCompletableSubscribe()) {
+            @Override CompletableObserver wrap(SubscribeHooks hooks,
+                CompletableObserver observer) {
+              return new TrackedCompletableObserver(hooks, observer);
+            }
+          });
+    }
+  }
+
+  /** A subscribe hook which runs the previous one, then wraps the observer of a selected source. */
+  abstract static class Hook<S, O> implements BiFunction<S, O, O> {
+    @Nullable private final BiFunction<? super S, ? super O, ? extends O> previous;
+
+    Hook(@Nullable BiFunction<? super S, ? super O, ? extends O> previous) {
+      this.previous = previous;
+    }
+
+    @Override public final O apply(S source, O observer) throws Exception {
+      if (previous != null) {
+        observer = previous.apply(source, observer);
+      }
+      SubscribeHooks hooks = current;
+      return hooks != null && hooks.filter.matches(source) ? wrap(hooks, observer) : observer;
+    }
+
+    abstract O wrap(SubscribeHooks hooks, O observer);
+  }
+
+  final TrackingGroup group;
+  final SubscribeFilter filter;
+  private final StripedCounter stripes;
+
+  private SubscribeHooks(TrackingGroup group, SubscribeFilter filter) {
+    this.group = group;
+    this.filter = filter;
+    this.stripes = new StripedCounter(group.work);
+  }
+
+  /** Returns the stripe which must be passed to the matching {@link #stopWork(int)} call. */
+  int startWork() {
+    int stripe = stripes.stripe();
+    stripes.increment(stripe);
+    return stripe;
+  }
+
+  void stopWork(int stripe) {
+    if (stripes.decrement(stripe)) {
+      group.onIdle();
+    }
+  }
+
+  /**
+   * The count for one subscription. Its state moves from not started to started in
+   * {@code onSubscribe}, and from started to stopped exactly once on a terminal event or disposal.
+   */
+  abstract static class TrackedSubscription extends AtomicInteger {
+    private static final int STATE_STARTED = 1;
+    private static final int STATE_STOPPED = 2;
+
+    private final SubscribeHooks hooks;
+    /** Written before the state moves to started and read after it moves to stopped. */
+    private int stripe;
+
+    TrackedSubscription(SubscribeHooks hooks) {
+      this.hooks = hooks;
+    }
+
+    final void start() {
+      stripe = hooks.startWork();
+      set(STATE_STARTED);
+    }
+
+    final void stop() {
+      if (compareAndSet(STATE_STARTED, STATE_STOPPED)) {
+        hooks.stopWork(stripe);
+      }
+    }
+  }
+
+  static final class TrackedObserver extends TrackedSubscription
+      implements Observer<Object>, Disposable {
+    private final Observer<Object> downstream;
+    @Nullable private Disposable upstream;
+
+    TrackedObserver(SubscribeHooks hooks, Observer<Object> downstream) {
+      super(hooks);
+      this.downstream = downstream;
+    }
+
+    @Override public void onSubscribe(Disposable d) {
+      upstream = d;
+      start();
+      downstream.onSubscribe(this);
+    }
+
+    @Override public void onNext(Object value) {
+      downstream.onNext(value);
+    }
+
+    @Override public void onError(Throwable e) {
+      try {
+        downstream.onError(e);
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void onComplete() {
+      try {
+        downstream.onComplete();
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void dispose() {
+      stop();
+      upstream.dispose();
+    }
+
+    @Override public boolean isDisposed() {
+      return upstream.isDisposed();
+    }
+  }
+
+  static final class TrackedSubscriber extends TrackedSubscription
+      implements FlowableSubscriber<Object>, Subscription {
+    private final Subscriber<Object> downstream;
+    @Nullable private Subscription upstream;
+
+    TrackedSubscriber(SubscribeHooks hooks, Subscriber<Object> downstream) {
+      super(hooks);
+      this.downstream = downstream;
+    }
+
+    @Override public void onSubscribe(Subscription s) {
+      upstream = s;
+      start();
+      downstream.onSubscribe(this);
+    }
+
+    @Override public void onNext(Object value) {
+      downstream.onNext(value);
+    }
+
+    @Override public void onError(Throwable e) {
+      try {
+        downstream.onError(e);
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void onComplete() {
+      try {
+        downstream.onComplete();
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void request(long n) {
+      upstream.request(n);
+    }
+
+    @Override public void cancel() {
+      stop();
+      upstream.cancel();
+    }
+  }
+
+  static final class TrackedSingleObserver extends TrackedSubscription
+      implements SingleObserver<Object>, Disposable {
+    private final SingleObserver<Object> downstream;
+    @Nullable private Disposable upstream;
+
+    TrackedSingleObserver(SubscribeHooks hooks, SingleObserver<Object> downstream) {
+      super(hooks);
+      this.downstream = downstream;
+    }
+
+    @Override public void onSubscribe(Disposable d) {
+      upstream = d;
+      start();
+      downstream.onSubscribe(this);
+    }
+
+    @Override public void onSuccess(Object value) {
+      try {
+        downstream.onSuccess(value);
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void onError(Throwable e) {
+      try {
+        downstream.onError(e);
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void dispose() {
+      stop();
+      upstream.dispose();
+    }
+
+    @Override public boolean isDisposed() {
+      return upstream.isDisposed();
+    }
+  }
+
+  static final class TrackedMaybeObserver extends TrackedSubscription
+      implements MaybeObserver<Object>, Disposable {
+    private final MaybeObserver<Object> downstream;
+    @Nullable private Disposable upstream;
+
+    TrackedMaybeObserver(SubscribeHooks hooks, MaybeObserver<Object> downstream) {
+      super(hooks);
+      this.downstream = downstream;
+    }
+
+    @Override public void onSubscribe(Disposable d) {
+      upstream = d;
+      start();
+      downstream.onSubscribe(this);
+    }
+
+    @Override public void onSuccess(Object value) {
+      try {
+        downstream.onSuccess(value);
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void onError(Throwable e) {
+      try {
+        downstream.onError(e);
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void onComplete() {
+      try {
+        downstream.onComplete();
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void dispose() {
+      stop();
+      upstream.dispose();
+    }
+
+    @Override public boolean isDisposed() {
+      return upstream.isDisposed();
+    }
+  }
+
+  static final class TrackedCompletableObserver extends TrackedSubscription
+      implements CompletableObserver, Disposable {
+    private final CompletableObserver downstream;
+    @Nullable private Disposable upstream;
+
+    TrackedCompletableObserver(SubscribeHooks hooks, CompletableObserver downstream) {
+      super(hooks);
+      this.downstream = downstream;
+    }
+
+    @Override public void onSubscribe(Disposable d) {
+      upstream = d;
+      start();
+      downstream.onSubscribe(this);
+    }
+
+    @Override public void onError(Throwable e) {
+      try {
+        downstream.onError(e);
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void onComplete() {
+      try {
+        downstream.onComplete();
+      } finally {
+        stop();
+      }
+    }
+
+    @Override public void dispose() {
+      stop();
+      upstream.dispose();
+    }
+
+    @Override public boolean isDisposed() {
+      return upstream.isDisposed();
+    }
+  }
+}
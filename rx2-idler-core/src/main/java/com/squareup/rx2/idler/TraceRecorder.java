@@ -0,0 +1,172 @@
+package com.squareup.rx2.idler;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * A fixed-size ring of scheduler events which can be written out in the Chrome trace event format
+ * for loading into Perfetto or {@code chrome://tracing}. All storage is allocated up front so that
+ * recording an event only claims a slot and writes into it. Once full, the oldest events are
+ * overwritten.
+ * <p>
+ * Writers do not wait for each other, so an event being recorded while the trace is written may
+ * appear torn. Write the trace once the scheduler is idle.
+ */
+@RestrictTo(LIBRARY)
+final class TraceRecorder {
+  static final byte SCHEDULE = 0;
+  static final byte START = 1;
+  static final byte END = 2;
+  static final byte DISPOSE = 3;
+  static final byte BUSY = 4;
+  static final byte IDLE = 5;
+
+  private final String name;
+  private final int mask;
+  private final AtomicLong next = new AtomicLong();
+  private final AtomicLong taskIds = new AtomicLong();
+  private final byte[] types;
+  private final long[] times;
+  private final long[] tasks;
+  private final long[] threadIds;
+  private final String[] threadNames;
+  private final Class<?>[] actions;
+
+  TraceRecorder(String name, int capacity) {
+    int size = Integer.highestOneBit(Math.max(1, capacity - 1) << 1);
+    this.name = name;
+    this.mask = size - 1;
+    this.types = new byte[size];
+    this.times = new long[size];
+    this.tasks = new long[size];
+    this.threadIds = new long[size];
+    this.threadNames = new String[size];
+    this.actions = new Class<?>[size];
+  }
+
+  /** Record that {@code action} was scheduled and return the id to use for its other events. */
+  long schedule(Object action) {
+    long task = taskIds.incrementAndGet();
+    record(SCHEDULE, task, action);
+    return task;
+  }
+
+  void record(byte type, long task, @Nullable Object action) {
+    long now = System.nanoTime();
+    Thread thread = Thread.currentThread();
+    int slot = (int) next.getAndIncrement() & mask;
+    types[slot] = type;
+    times[slot] = now;
+    tasks[slot] = task;
+    threadIds[slot] = thread.getId();
+    threadNames[slot] = thread.getName();
+    actions[slot] = action != null ? action.getClass() : null;
+  }
+
+  void write(Writer writer) throws IOException {
+    long end = next.get();
+    long start = Math.max(0L, end - (mask + 1));
+    Map<Long, String> threads = new LinkedHashMap<>();
+    writer.write("{\"traceEvents\":[");
+    boolean first = true;
+    for (long i = start; i < end; i++) {
+      int slot = (int) i & mask;
+      threads.put(threadIds[slot], threadNames[slot]);
+      if (!first) {
+        writer.write(',');
+      }
+      first = false;
+      writer.write("\n{\"name\":");
+      writeString(writer, eventName(slot));
+      writer.write(",\"cat\":");
+      writeString(writer, name);
+      writer.write(",\"ph\":\"");
+      switch (types[slot]) {
+        case START:
+          writer.write("B\"");
+          break;
+        case END:
+          writer.write("E\"");
+          break;
+        case BUSY:
+        case IDLE:
+          writer.write("i\",\"s\":\"p\"");
+          break;
+        default:
+          writer.write("i\",\"s\":\"t\"");
+          break;
+      }
+      long time = times[slot];
+      writer.write(",\"ts\":");
+      writer.write(Long.toString(time / 1000L));
+      writer.write('.');
+      String fraction = Long.toString(1000L + Math.abs(time % 1000L));
+      writer.write(fraction, 1, 3);
+      writer.write(",\"pid\":1,\"tid\":");
+      writer.write(Long.toString(threadIds[slot]));
+      if (types[slot] != BUSY && types[slot] != IDLE) {
+        writer.write(",\"args\":{\"task\":");
+        writer.write(Long.toString(tasks[slot]));
+        writer.write('}');
+      }
+      writer.write('}');
+    }
+    for (Map.Entry<Long, String> thread : threads.entrySet()) {
+      if (!first) {
+        writer.write(',');
+      }
+      first = false;
+      writer.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":");
+      writer.write(Long.toString(thread.getKey()));
+      writer.write(",\"args\":{\"name\":");
+      writeString(writer, thread.getValue());
+      writer.write("}}");
+    }
+    writer.write("\n]}\n");
+    writer.flush();
+  }
+
+  private String eventName(int slot) {
+    Class<?> action = actions[slot];
+    String label = action != null ? action.getName() : "?";
+    switch (types[slot]) {
+      case SCHEDULE:
+        return "schedule " + label;
+      case DISPOSE:
+        return "dispose " + label;
+      case BUSY:
+        return "busy";
+      case IDLE:
+        return "idle";
+      default:
+        return label;
+    }
+  }
+
+  private static void writeString(Writer writer, @Nullable String value) throws IOException {
+    if (value == null) {
+      writer.write("null");
+      return;
+    }
+    writer.write('"');
+    for (int i = 0, length = value.length(); i < length; i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        writer.write('\\');
+        writer.write(c);
+      } else if (c < 0x20) {
+        writer.write(String.format("\\u%04x", (int) c));
+      } else {
+        writer.write(c);
+      }
+    }
+    writer.write('"');
+  }
+}
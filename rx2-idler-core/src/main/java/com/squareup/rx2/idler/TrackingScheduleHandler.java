@@ -0,0 +1,48 @@
+package com.squareup.rx2.idler;
+
+import androidx.annotation.RestrictTo;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.SchedulerRunnableIntrospection;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * A schedule handler which counts every {@link Runnable} in a {@link TrackingGroup} while it runs.
+ * The handler sees neither the delay nor the disposal of the work it wraps, so unlike a
+ * {@link TrackingScheduler} it cannot count work which is waiting to run.
+ */
+@RestrictTo(LIBRARY)
+final class TrackingScheduleHandler implements Function<Runnable, Runnable> {
+  private final TrackingGroup group;
+
+  TrackingScheduleHandler(TrackingGroup group) {
+    this.group = group;
+  }
+
+  @Override public Runnable apply(Runnable runnable) {
+    return new TrackedRunnable(group, runnable);
+  }
+
+  static final class TrackedRunnable implements Runnable, SchedulerRunnableIntrospection {
+    private final TrackingGroup group;
+    private final Runnable delegate;
+
+    TrackedRunnable(TrackingGroup group, Runnable delegate) {
+      this.group = group;
+      this.delegate = delegate;
+    }
+
+    @Override public void run() {
+      group.startWork();
+      try {
+        delegate.run();
+      } finally {
+        group.stopWork();
+      }
+    }
+
+    @Override public Runnable getWrappedRunnable() {
+      return delegate;
+    }
+  }
+}
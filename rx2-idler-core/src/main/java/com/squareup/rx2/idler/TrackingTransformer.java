@@ -0,0 +1,81 @@
+package com.squareup.rx2.idler;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableSource;
+import io.reactivex.CompletableTransformer;
+import io.reactivex.Flowable;
+import io.reactivex.FlowableTransformer;
+import io.reactivex.Maybe;
+import io.reactivex.MaybeSource;
+import io.reactivex.MaybeTransformer;
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Single;
+import io.reactivex.SingleSource;
+import io.reactivex.SingleTransformer;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import org.reactivestreams.Publisher;
+
+/**
+ * Counts each subscription to the stream it is applied to in a {@link TrackingGroup}, from
+ * subscribe until a terminal event or disposal. This covers sources which deliver on their own
+ * threads, such as network callbacks or {@code Observable.create}, and so never reach a
+ * {@link TrackingScheduler}.
+ * <p>
+ * Create one with {@link Rx2Tracking#transformer(TrackingGroup)} and apply it with
+ * {@code compose()} to any of the five stream types.
+ * <p>
+ * Each subscription pays for the observers of the two operators this adds, {@code doOnSubscribe}
+ * and {@code doFinally}. Their callbacks are shared by every subscription and take no locks.
+ */
+public final class TrackingTransformer<T> implements ObservableTransformer<T, T>,
+    FlowableTransformer<T, T>, SingleTransformer<T, T>, MaybeTransformer<T, T>,
+    CompletableTransformer {
+  private final Tracker tracker;
+
+  TrackingTransformer(TrackingGroup group) {
+    this.tracker = new Tracker(group);
+  }
+
+  @Override public ObservableSource<T> apply(Observable<T> upstream) {
+    return upstream.doOnSubscribe(tracker).doFinally(tracker);
+  }
+
+  @Override public Publisher<T> apply(Flowable<T> upstream) {
+    return upstream.doOnSubscribe(tracker).doFinally(tracker);
+  }
+
+  @Override public SingleSource<T> apply(Single<T> upstream) {
+    return upstream.doOnSubscribe(tracker).doFinally(tracker);
+  }
+
+  @Override public MaybeSource<T> apply(Maybe<T> upstream) {
+    return upstream.doOnSubscribe(tracker).doFinally(tracker);
+  }
+
+  @Override public CompletableSource apply(Completable upstream) {
+    return upstream.doOnSubscribe(tracker).doFinally(tracker);
+  }
+
+  /**
+   * Starts work on subscribe and stops it from {@code doFinally}, which runs once per subscription
+   * whether it terminates or is disposed.
+   */
+  static final class Tracker implements Consumer<Object>, Action {
+    private final TrackingGroup group;
+
+    Tracker(TrackingGroup group) {
+      this.group = group;
+    }
+
+    @Override public void accept(Object subscription) {
+      group.startWork();
+    }
+
+    @Override public void run() {
+      group.stopWork();
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package com.squareup.rx2.idler;
+
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class IdlerOptionsTest {
+  @Test public void defaults() {
+    assertFalse(IdlerOptions.DEFAULT.stripedCounter);
+    assertEquals(0L, IdlerOptions.DEFAULT.lookAheadNanos);
+    assertFalse(IdlerOptions.DEFAULT.metrics);
+    assertEquals(0, IdlerOptions.DEFAULT.inFlightCapacity);
+    assertEquals(0, IdlerOptions.DEFAULT.stackSampleRate);
+    assertEquals(0L, IdlerOptions.DEFAULT.dumpInFlightAfterNanos);
+    assertEquals(-1L, IdlerOptions.DEFAULT.coalesceIdleNanos);
+    assertNull(IdlerOptions.DEFAULT.group);
+    assertFalse(IdlerOptions.DEFAULT.virtualTime);
+    assertEquals(1d, IdlerOptions.DEFAULT.timeCompression, 0d);
+    assertEquals(0, IdlerOptions.DEFAULT.traceCapacity);
+    assertNull(IdlerOptions.DEFAULT.busyPolicy);
+    assertFalse(IdlerOptions.DEFAULT.latencyHistograms);
+    assertFalse(IdlerOptions.DEFAULT.threadCpuTime);
+  }
+
+  @Test public void newBuilderCopiesOptions() {
+    TrackingGroup group = new TrackingGroup("Group");
+    BusyPolicy busyPolicy = new BusyPolicy() {
+      @Override public Busy decide(Runnable task, long delayNanos, long periodNanos) {
+        return Busy.IGNORE;
+      }
+    };
+    IdlerOptions options = new IdlerOptions.Builder()
+        .stripedCounter(true)
+        .lookAhead(1, SECONDS)
+        .metrics(true)
+        .trackInFlight(16)
+        .sampleStacks(4)
+        .dumpInFlightAfter(2, SECONDS)
+        .coalesceIdle(3, MILLISECONDS)
+        .group(group)
+        .virtualTime(true)
+        .compressTime(10)
+        .trace(128)
+        .busyPolicy(busyPolicy)
+        .latencyHistograms(true)
+        .threadCpuTime(true)
+        .build();
+    IdlerOptions copy = options.newBuilder().build();
+    assertTrue(copy.stripedCounter);
+    assertEquals(SECONDS.toNanos(1), copy.lookAheadNanos);
+    assertTrue(copy.metrics);
+    assertEquals(16, copy.inFlightCapacity);
+    assertEquals(4, copy.stackSampleRate);
+    assertEquals(SECONDS.toNanos(2), copy.dumpInFlightAfterNanos);
+    assertEquals(MILLISECONDS.toNanos(3), copy.coalesceIdleNanos);
+    assertSame(group, copy.group);
+    assertTrue(copy.virtualTime);
+    assertEquals(10d, copy.timeCompression, 0d);
+    assertEquals(128, copy.traceCapacity);
+    assertSame(busyPolicy, copy.busyPolicy);
+    assertTrue(copy.latencyHistograms);
+    assertTrue(copy.threadCpuTime);
+  }
+
+  @Test public void lookAheadInvalidArgumentsFails() {
+    IdlerOptions.Builder builder = new IdlerOptions.Builder();
+    try {
+      builder.lookAhead(-1, MILLISECONDS);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("time < 0: -1", e.getMessage());
+    }
+    try {
+      builder.lookAhead(1, null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("unit == null", e.getMessage());
+    }
+  }
+
+  @Test public void inFlightInvalidArgumentsFails() {
+    IdlerOptions.Builder builder = new IdlerOptions.Builder();
+    try {
+      builder.trackInFlight(-1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("capacity < 0: -1", e.getMessage());
+    }
+    try {
+      builder.sampleStacks(-1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("rate < 0: -1", e.getMessage());
+    }
+    try {
+      builder.dumpInFlightAfter(-1, MILLISECONDS);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("time < 0: -1", e.getMessage());
+    }
+    try {
+      builder.dumpInFlightAfter(1, null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("unit == null", e.getMessage());
+    }
+  }
+
+  @Test public void coalesceIdleInvalidArgumentsFails() {
+    IdlerOptions.Builder builder = new IdlerOptions.Builder();
+    try {
+      builder.coalesceIdle(-1, MILLISECONDS);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("time < 0: -1", e.getMessage());
+    }
+    try {
+      builder.coalesceIdle(1, null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("unit == null", e.getMessage());
+    }
+  }
+
+  @Test public void compressTimeInvalidFactorFails() {
+    IdlerOptions.Builder builder = new IdlerOptions.Builder();
+    try {
+      builder.compressTime(0.5);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("factor < 1: 0.5", e.getMessage());
+    }
+    try {
+      builder.compressTime(Double.NaN);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("factor < 1: NaN", e.getMessage());
+    }
+  }
+
+  @Test public void traceInvalidCapacityFails() {
+    try {
+      new IdlerOptions.Builder().trace(-1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("capacity < 0: -1", e.getMessage());
+    }
+  }
+}
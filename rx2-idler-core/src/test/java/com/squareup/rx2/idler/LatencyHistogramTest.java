@@ -0,0 +1,75 @@
+package com.squareup.rx2.idler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class LatencyHistogramTest {
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+  @Test public void emptyHistogram() {
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.totalNanos());
+    assertEquals(0, histogram.maxNanos());
+    assertEquals(0, histogram.percentileNanos(50));
+  }
+
+  @Test public void bucketsCoverEveryValueInOrder() {
+    for (long value = 0; value < 10_000; value++) {
+      int index = LatencyHistogram.indexOf(value);
+      assertTrue(value <= histogram.bucketLimitNanos(index));
+      if (index > 0) {
+        assertTrue(value > histogram.bucketLimitNanos(index - 1));
+      }
+    }
+  }
+
+  @Test public void bucketWidthIsAtMostAQuarterOfItsValues() {
+    for (int index = 4; index < histogram.bucketCount() - 1; index++) {
+      long lower = histogram.bucketLimitNanos(index - 1) + 1;
+      long width = histogram.bucketLimitNanos(index) - lower + 1;
+      assertTrue(width * 4 <= lower);
+    }
+  }
+
+  @Test public void hugeValuesShareLastBucket() {
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(1, histogram.countAt(histogram.bucketCount() - 1));
+    assertEquals(Long.MAX_VALUE, histogram.maxNanos());
+  }
+
+  @Test public void negativeValuesAreRecordedAsZero() {
+    histogram.record(-5);
+    assertEquals(1, histogram.countAt(0));
+    assertEquals(0, histogram.totalNanos());
+  }
+
+  @Test public void percentiles() {
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1000L);
+    }
+    assertEquals(100, histogram.count());
+    assertEquals(5_050_000L, histogram.totalNanos());
+    assertEquals(100_000L, histogram.maxNanos());
+    assertWithinQuarter(50_000L, histogram.percentileNanos(50));
+    assertWithinQuarter(90_000L, histogram.percentileNanos(90));
+    assertEquals(100_000L, histogram.percentileNanos(100));
+    assertWithinQuarter(1_000L, histogram.percentileNanos(0));
+  }
+
+  @Test public void invalidPercentileFails() {
+    try {
+      histogram.percentileNanos(101);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("percentile not in [0, 100]: 101.0", e.getMessage());
+    }
+  }
+
+  private static void assertWithinQuarter(long expected, long actual) {
+    assertTrue(actual + " < " + expected, actual >= expected);
+    assertTrue(actual + " > " + expected, actual <= expected + expected / 4);
+  }
+}
@@ -0,0 +1,48 @@
+package com.squareup.rx2.idler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class StripedCounterTest {
+  private final AtomicInteger total = new AtomicInteger();
+  private final StripedCounter counter = new StripedCounter(total, 4);
+
+  @Test public void reportsTransitionsOnlyAtZero() {
+    int stripe = counter.stripe();
+    assertTrue(counter.increment(stripe));
+    assertFalse(counter.increment(stripe));
+    assertFalse(counter.decrement(stripe));
+    assertTrue(counter.decrement(stripe));
+  }
+
+  @Test public void totalCountsNonZeroStripes() {
+    counter.increment(0);
+    counter.increment(0);
+    assertEquals(1, total.get());
+    assertFalse(counter.increment(3));
+    assertEquals(2, total.get());
+    assertFalse(counter.decrement(0));
+    assertFalse(counter.decrement(0));
+    assertEquals(1, total.get());
+    assertTrue(counter.decrement(3));
+    assertEquals(0, total.get());
+  }
+
+  @Test public void sharedTotalReportsTransitionsOnce() {
+    StripedCounter other = new StripedCounter(total, 4);
+    assertTrue(counter.increment(0));
+    assertFalse(other.increment(0));
+    assertFalse(counter.decrement(0));
+    assertTrue(other.decrement(0));
+  }
+
+  @Test public void stripeIsStableForThread() {
+    int stripe = counter.stripe();
+    assertTrue(stripe >= 0 && stripe < 4);
+    assertTrue(stripe == counter.stripe());
+  }
+}
@@ -0,0 +1,84 @@
+package com.squareup.rx2.idler;
+
+import io.reactivex.functions.Function;
+import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.SchedulerRunnableIntrospection;
+import io.reactivex.schedulers.Schedulers;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class TrackingScheduleHandlerTest {
+  private final TrackingGroup group = new TrackingGroup("Work");
+  private final Function<Runnable, Runnable> handler = Rx2Tracking.scheduleHandler(group);
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  public TrackingScheduleHandlerTest() {
+    group.setIdleListener(new IdleListener() {
+      @Override public void onIdle() {
+        idleCount.incrementAndGet();
+      }
+    });
+  }
+
+  @After public void tearDown() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test public void busyOnlyWhileRunning() throws Exception {
+    BusyCheckingRunnable runnable = new BusyCheckingRunnable();
+    Runnable tracked = handler.apply(runnable);
+    assertTrue(group.isIdleNow());
+    tracked.run();
+    assertEquals(1, runnable.busyRuns.get());
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void throwingRunnableReportsIdle() throws Exception {
+    Runnable tracked = handler.apply(new Runnable() {
+      @Override public void run() {
+        throw new IllegalStateException("Boom");
+      }
+    });
+    try {
+      tracked.run();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Boom", e.getMessage());
+    }
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void exposesWrappedRunnable() throws Exception {
+    Runnable runnable = new CountingRunnable();
+    Runnable tracked = handler.apply(runnable);
+    assertSame(runnable, ((SchedulerRunnableIntrospection) tracked).getWrappedRunnable());
+  }
+
+  @Test public void installedHandlerCountsUnwrappedSchedulers() {
+    RxJavaPlugins.setScheduleHandler(handler);
+    QueueExecutorService executor = new QueueExecutorService();
+    BusyCheckingRunnable runnable = new BusyCheckingRunnable();
+    Schedulers.from(executor).scheduleDirect(runnable);
+    executor.runAll();
+    assertEquals(1, runnable.busyRuns.get());
+    assertTrue(group.isIdleNow());
+  }
+
+  private final class BusyCheckingRunnable implements Runnable {
+    final AtomicInteger busyRuns = new AtomicInteger();
+
+    @Override public void run() {
+      if (!group.isIdleNow()) {
+        busyRuns.incrementAndGet();
+      }
+    }
+  }
+}
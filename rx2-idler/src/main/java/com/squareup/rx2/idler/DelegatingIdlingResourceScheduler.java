@@ -2,199 +2,131 @@ package com.squareup.rx2.idler;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
-import io.reactivex.Scheduler;
-import io.reactivex.disposables.CompositeDisposable;
+import androidx.test.espresso.IdlingRegistry;
+import androidx.test.espresso.IdlingResource;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.disposables.Disposables;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import static androidx.annotation.RestrictTo.Scope.LIBRARY;
 
+/**
+ * Exposes a {@link TrackingScheduler} to Espresso. Workers come straight from the tracking
+ * scheduler so only direct scheduling passes through here.
+ */
 @RestrictTo(LIBRARY)
 final class DelegatingIdlingResourceScheduler extends IdlingResourceScheduler {
-  private final Scheduler delegate;
-  private final String name;
-  private final AtomicInteger work = new AtomicInteger();
-  @Nullable private ResourceCallback callback;
+  private final TrackingScheduler delegate;
+  /** Whether this scheduler registers and unregisters itself as it is started and shut down. */
+  private volatile boolean managed;
 
-  DelegatingIdlingResourceScheduler(Scheduler delegate, String name) {
+  DelegatingIdlingResourceScheduler(TrackingScheduler delegate) {
     this.delegate = delegate;
-    this.name = name;
   }
 
   @Override public String getName() {
-    return name;
+    return delegate.getName();
   }
 
   @Override public boolean isIdleNow() {
-    return work.get() == 0;
+    return delegate.isIdleNow();
   }
 
   @Override public void registerIdleTransitionCallback(ResourceCallback callback) {
-    this.callback = callback;
+    delegate.setIdleListener(ResourceCallbackListener.wrap(callback));
   }
 
-  @Override public Worker createWorker() {
-    final Worker delegateWorker = delegate.createWorker();
-    return new Worker() {
-      private final CompositeDisposable disposables = new CompositeDisposable(delegateWorker);
-
-      @Override public Disposable schedule(Runnable action) {
-        if (disposables.isDisposed()) {
-          return Disposables.disposed();
-        }
-        ScheduledWork work = createWork(action, 0L, 0L);
-        Disposable disposable = delegateWorker.schedule(work);
-        ScheduledWorkDisposable workDisposable = new ScheduledWorkDisposable(work, disposable);
-        disposables.add(workDisposable);
-        return workDisposable;
-      }
-
-      @Override public Disposable schedule(Runnable action, long delayTime, TimeUnit unit) {
-        if (disposables.isDisposed()) {
-          return Disposables.disposed();
-        }
-        ScheduledWork work = createWork(action, delayTime, 0L);
-        Disposable disposable = delegateWorker.schedule(work, delayTime, unit);
-        disposables.add(disposable);
-        ScheduledWorkDisposable workDisposable = new ScheduledWorkDisposable(work, disposable);
-        disposables.add(workDisposable);
-        return workDisposable;
-      }
-
-      @Override
-      public Disposable schedulePeriodically(Runnable action, long initialDelay, long period,
-          TimeUnit unit) {
-        if (disposables.isDisposed()) {
-          return Disposables.disposed();
-        }
-        ScheduledWork work = createWork(action, initialDelay, period);
-        Disposable disposable =
-            delegateWorker.schedulePeriodically(work, initialDelay, period, unit);
-        disposables.add(disposable);
-        ScheduledWorkDisposable workDisposable = new ScheduledWorkDisposable(work, disposable);
-        disposables.add(workDisposable);
-        return workDisposable;
-      }
-
-      @Override public void dispose() {
-        disposables.dispose();
-      }
-
-      @Override public boolean isDisposed() {
-        return disposables.isDisposed();
-      }
-    };
-  }
-
-  void startWork() {
-    work.incrementAndGet();
-  }
-
-  void stopWork() {
-    if (work.decrementAndGet() == 0 && callback != null) {
-      callback.onTransitionToIdle();
-    }
+  @Override public void setIdleListener(@Nullable IdleListener listener) {
+    delegate.setIdleListener(listener);
   }
 
-  ScheduledWork createWork(Runnable action, long delay, long period) {
-    if (action instanceof ScheduledWork) {
-      // Unwrap any re-scheduled work. We want each scheduler to get its own state machine.
-      action = ((ScheduledWork) action).delegate;
-    }
-    boolean immediate = delay == 0;
-    if (immediate) {
-      startWork();
-    }
-    int startingState = immediate ? ScheduledWork.STATE_SCHEDULED : ScheduledWork.STATE_IDLE;
-    return new ScheduledWork(action, startingState, period > 0L);
+  @Override public void addIdleListener(IdleListener listener) {
+    delegate.addIdleListener(listener);
   }
 
-  final class ScheduledWork extends AtomicInteger implements Runnable {
-    static final int STATE_IDLE = 0; // --> STATE_RUNNING, STATE_DISPOSED
-    static final int STATE_SCHEDULED = 1; // --> STATE_RUNNING, STATE_DISPOSED
-    static final int STATE_RUNNING = 2; // --> STATE_IDLE, STATE_COMPLETED, STATE_DISPOSED
-    static final int STATE_COMPLETED = 3; // --> STATE_DISPOSED
-    static final int STATE_DISPOSED = 4;
+  @Override public void removeIdleListener(IdleListener listener) {
+    delegate.removeIdleListener(listener);
+  }
 
-    final Runnable delegate;
+  @Nullable @Override public TrackingGroup getGroup() {
+    return delegate.getGroup();
+  }
 
-    private final boolean isPeriodic;
+  /** The resource to register with Espresso: the group if it is one, otherwise this. */
+  IdlingResource idlingResource() {
+    TrackingGroup group = delegate.getGroup();
+    return group instanceof IdlingResource ? (IdlingResource) group : this;
+  }
 
-    ScheduledWork(Runnable delegate, int startingState, boolean isPeriodic) {
-      super(startingState);
-      this.delegate = delegate;
-      this.isPeriodic = isPeriodic;
-    }
+  /**
+   * Register with Espresso in place of any resource of the same name, then follow this
+   * scheduler's lifecycle: unregister on {@link #shutdown()} and register again on
+   * {@link #start()}. A group is left registered on shutdown, as it holds no reference to its
+   * schedulers.
+   */
+  void registerManaged() {
+    managed = true;
+    IdlingRegistrations.registerReplacing(idlingResource());
+  }
 
-    @Override public void run() {
-      for (;;) {
-        int state = get();
-        switch (state) {
-          case STATE_IDLE:
-          case STATE_SCHEDULED:
-            if (compareAndSet(state, STATE_RUNNING)) {
-              if (state == STATE_IDLE) {
-                startWork();
-              }
-              try {
-                delegate.run();
-              } finally {
-                // Change state with a CAS to ensure we don't overwrite a disposed state.
-                compareAndSet(STATE_RUNNING, isPeriodic ? STATE_IDLE : STATE_COMPLETED);
-                stopWork();
-              }
-              return; // CAS success, we're done.
-            }
-            break; // CAS failed, retry.
-
-          case STATE_RUNNING:
-            throw new IllegalStateException("Already running");
-
-          case STATE_COMPLETED:
-            throw new IllegalStateException("Already completed");
-
-          case STATE_DISPOSED:
-            return; // Nothing to do.
-        }
-      }
-    }
+  @Nullable @Override public IdlerMetrics getMetrics() {
+    return delegate.getMetrics();
+  }
 
-    void dispose() {
-      for (;;) {
-        int state = get();
-        if (state == STATE_DISPOSED) {
-          return; // Nothing to do.
-        } else if (compareAndSet(state, STATE_DISPOSED)) {
-          // If idle, startWork() hasn't been called so we don't need a matching stopWork().
-          // If running, startWork() was called but the try/finally ensures a stopWork() call.
-          // If completed, both startWork() and stopWork() have been called.
-          if (state == STATE_SCHEDULED) {
-            stopWork(); // Scheduled but not running means we called startWork().
-          }
-          return;
-        }
-      }
-    }
+  @Nullable @Override public IdlerLatency getLatency() {
+    return delegate.getLatency();
   }
 
-  static final class ScheduledWorkDisposable implements Disposable {
-    private final ScheduledWork work;
-    private final Disposable delegate;
+  @Nullable @Override public String dumpInFlightWork() {
+    return delegate.dumpInFlightWork();
+  }
 
-    ScheduledWorkDisposable(ScheduledWork work, Disposable delegate) {
-      this.delegate = delegate;
-      this.work = work;
-    }
+  @Override public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.awaitIdle(timeout, unit);
+  }
 
-    @Override public void dispose() {
-      work.dispose();
-      delegate.dispose();
+  @Override public void writeTrace(Writer writer) throws IOException {
+    delegate.writeTrace(writer);
+  }
+
+  @Override public void advanceTimeBy(long time, TimeUnit unit) {
+    delegate.advanceTimeBy(time, unit);
+  }
+
+  @Override public boolean advanceTimeToNext() {
+    return delegate.advanceTimeToNext();
+  }
+
+  @Override public long now(TimeUnit unit) {
+    return delegate.now(unit);
+  }
+
+  @Override public Disposable scheduleDirect(Runnable run, long delay, TimeUnit unit) {
+    return delegate.scheduleDirect(run, delay, unit);
+  }
+
+  @Override
+  public Disposable schedulePeriodicallyDirect(Runnable run, long initialDelay, long period,
+      TimeUnit unit) {
+    return delegate.schedulePeriodicallyDirect(run, initialDelay, period, unit);
+  }
+
+  @Override public Worker createWorker() {
+    return delegate.createWorker();
+  }
+
+  @Override public void start() {
+    delegate.start();
+    if (managed) {
+      IdlingRegistrations.registerReplacing(idlingResource());
     }
+  }
 
-    @Override public boolean isDisposed() {
-      return work.get() == ScheduledWork.STATE_DISPOSED;
+  @Override public void shutdown() {
+    delegate.shutdown();
+    if (managed && idlingResource() == this) {
+      IdlingRegistry.getInstance().unregister(this);
     }
   }
 }
@@ -0,0 +1,45 @@
+package com.squareup.rx2.idler;
+
+import androidx.annotation.RestrictTo;
+import androidx.test.espresso.IdlingRegistry;
+import androidx.test.espresso.IdlingResource;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+@RestrictTo(LIBRARY)
+final class IdlingRegistrations {
+  /**
+   * Register {@code resource} with Espresso in place of any resource with the same name. Espresso
+   * ignores all but the first resource of a name, so one left by an earlier scheduler instance
+   * would otherwise shadow the new one and keep the old scheduler reachable.
+   */
+  static void registerReplacing(IdlingResource resource) {
+    IdlingRegistry registry = IdlingRegistry.getInstance();
+    String name = resource.getName();
+    for (IdlingResource registered : registry.getResources()) {
+      if (registered != resource && name.equals(registered.getName())) {
+        registry.unregister(registered);
+      }
+    }
+    registry.register(resource);
+  }
+
+  /**
+   * Returns the registered {@link IdlingResourceGroup} named {@code name}, first registering a new
+   * one in place of any other resource with that name if there is none.
+   */
+  static synchronized IdlingResourceGroup group(String name) {
+    for (IdlingResource registered : IdlingRegistry.getInstance().getResources()) {
+      if (registered instanceof IdlingResourceGroup && name.equals(registered.getName())) {
+        return (IdlingResourceGroup) registered;
+      }
+    }
+    IdlingResourceGroup group = new IdlingResourceGroup(name);
+    registerReplacing(group);
+    return group;
+  }
+
+  private IdlingRegistrations() {
+    throw new AssertionError("No instances");
+  }
+}
@@ -21,34 +21,123 @@ public final class Rx2Idler {
    * Returns a function which wraps the supplied {@link Scheduler} in one which notifies Espresso as
    * to whether it is currently executing work or not.
    * <p>
-   * Note: Work scheduled in the future does not mark the idling resource as busy.
+   * Note: Work scheduled in the future does not mark the idling resource as busy. Use
+   * {@link IdlerOptions.Builder#lookAhead} to include work which is due soon.
+   */
+  @CheckResult @NonNull
+  public static Function<Callable<Scheduler>, Scheduler> create(@NonNull String name) {
+    return create(name, IdlerOptions.DEFAULT);
+  }
+
+  /**
+   * Returns a function which wraps the supplied {@link Scheduler} in one which notifies Espresso as
+   * to whether it is currently executing work or not, configured by {@code options}. If the options
+   * have an {@link IdlingResourceGroup}, the group is registered instead.
+   * <p>
+   * A resource left registered under the same name, for example by a scheduler from before
+   * {@code RxJavaPlugins.reset()}, is replaced. The scheduler unregisters itself on
+   * {@link Scheduler#shutdown()} and registers again on {@link Scheduler#start()}.
    */
   @SuppressWarnings("ConstantConditions") // Public API guarding.
   @CheckResult @NonNull
-  public static Function<Callable<Scheduler>, Scheduler> create(@NonNull final String name) {
+  public static Function<Callable<Scheduler>, Scheduler> create(@NonNull final String name,
+      @NonNull final IdlerOptions options) {
     if (name == null) throw new NullPointerException("name == null");
+    if (options == null) throw new NullPointerException("options == null");
     return new Function<Callable<Scheduler>, Scheduler>() {
       @Override public Scheduler apply(Callable<Scheduler> delegate) throws Exception {
-        IdlingResourceScheduler scheduler =
-            new DelegatingIdlingResourceScheduler(delegate.call(), name);
-        IdlingRegistry.getInstance().register(scheduler);
+        DelegatingIdlingResourceScheduler scheduler = new DelegatingIdlingResourceScheduler(
+            Rx2Tracking.wrap(delegate.call(), name, options));
+        scheduler.registerManaged();
         return scheduler;
       }
     };
   }
 
+  /**
+   * Returns a function for {@code RxJavaPlugins.setScheduleHandler} which reports every task run by
+   * any scheduler to one {@link IdlingResourceGroup}, and registers the group with Espresso. This
+   * covers custom schedulers and {@code Schedulers.from()} instances with a single hook.
+   * <p>
+   * <pre><code>
+   * RxJavaPlugins.setScheduleHandler(Rx2Idler.scheduleHandler("RxJava 2.x Work"));
+   * </code></pre>
+   * Note: Tasks are only counted while running, as the handler sees neither the delay nor the
+   * disposal of a task. See {@link Rx2Tracking#scheduleHandler}.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static Function<Runnable, Runnable> scheduleHandler(@NonNull String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    IdlingResourceGroup group = new IdlingResourceGroup(name);
+    IdlingRegistrations.registerReplacing(group);
+    return Rx2Tracking.scheduleHandler(group);
+  }
+
+  /**
+   * Returns a transformer which reports each subscription as busy from subscribe until a terminal
+   * event or disposal, for sources which deliver on their own threads and never reach a wrapped
+   * scheduler. Subscriptions count toward the {@link IdlingResourceGroup} named {@code name},
+   * which is registered with Espresso the first time it is used.
+   * <p>
+   * <pre><code>
+   * api.user(id)
+   *     .compose(Rx2Idler.transformer("Network"))
+   *     .subscribe(observer);
+   * </code></pre>
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static <T> TrackingTransformer<T> transformer(@NonNull String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    return Rx2Tracking.transformer(IdlingRegistrations.group(name));
+  }
+
+  /**
+   * Install {@code RxJavaPlugins} subscribe hooks which report each live subscription to a source
+   * selected by {@code filter} as busy, until a terminal event or disposal. Subscriptions count
+   * toward the {@link IdlingResourceGroup} named {@code name}, which is registered with Espresso.
+   * <p>
+   * <pre><code>
+   * Rx2Idler.installSubscribeHooks("Data Sources", new SubscribeFilter.Builder()
+   *     .sourcePackage("retrofit2.adapter.rxjava2")
+   *     .build());
+   * </code></pre>
+   * See {@link Rx2Tracking#installSubscribeHooks}.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  public static void installSubscribeHooks(@NonNull String name,
+      @NonNull SubscribeFilter filter) {
+    if (name == null) throw new NullPointerException("name == null");
+    if (filter == null) throw new NullPointerException("filter == null");
+    Rx2Tracking.installSubscribeHooks(IdlingRegistrations.group(name), filter);
+  }
+
   /**
    * Wraps the supplied {@link Scheduler} into one which also implements {@link IdlingResource}.
    * You must {@linkplain IdlingRegistry#register(IdlingResource...) register} the
    * returned instance with Espresso before it will be used. Only work scheduled on the returned
    * instance directly will be registered.
    */
-  @SuppressWarnings("ConstantConditions") // Public API guarding.
   @CheckResult @NonNull
   public static IdlingResourceScheduler wrap(@NonNull Scheduler scheduler, @NonNull String name) {
+    return wrap(scheduler, name, IdlerOptions.DEFAULT);
+  }
+
+  /**
+   * Wraps the supplied {@link Scheduler} into one which also implements {@link IdlingResource},
+   * configured by {@code options}. You must
+   * {@linkplain IdlingRegistry#register(IdlingResource...) register} the returned instance, or the
+   * options' {@linkplain IdlerOptions.Builder#group group}, with Espresso before it will be used.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static IdlingResourceScheduler wrap(@NonNull Scheduler scheduler, @NonNull String name,
+      @NonNull IdlerOptions options) {
     if (scheduler == null) throw new NullPointerException("scheduler == null");
     if (name == null) throw new NullPointerException("name == null");
-    return new DelegatingIdlingResourceScheduler(scheduler, name);
+    if (options == null) throw new NullPointerException("options == null");
+    return new DelegatingIdlingResourceScheduler(Rx2Tracking.wrap(scheduler, name, options));
   }
 
   private Rx2Idler() {
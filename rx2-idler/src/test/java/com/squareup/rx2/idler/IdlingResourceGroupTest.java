@@ -0,0 +1,26 @@
+package com.squareup.rx2.idler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class IdlingResourceGroupTest {
+  @Test public void name() {
+    assertEquals("Bob", new IdlingResourceGroup("Bob").getName());
+  }
+
+  @Test public void idleWhenEmpty() {
+    assertTrue(new IdlingResourceGroup("Bob").isIdleNow());
+  }
+
+  @Test public void nullNameFails() {
+    try {
+      new IdlingResourceGroup(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package com.squareup.rx3.idler;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import com.squareup.rx3.idler.DelegatingTrackingScheduler.ScheduledWork;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * A bounded, lock-free set of the work which has been scheduled but not yet completed or disposed.
+ * Work which cannot find a free slot after a few probes is not tracked rather than blocking.
+ */
+@RestrictTo(LIBRARY)
+final class InFlightRegistry {
+  private static final Logger logger = Logger.getLogger(TrackingScheduler.class.getName());
+  private static final int MAX_PROBES = 8;
+
+  private final String name;
+  private final AtomicReferenceArray<Entry> slots;
+  private final int mask;
+  private final int stackSampleRate;
+  private final long dumpAfterNanos;
+  private final AtomicInteger cursor = new AtomicInteger();
+  private final AtomicInteger untracked = new AtomicInteger();
+  private volatile long busySince;
+  private volatile boolean dumped;
+
+  InFlightRegistry(String name, int capacity, int stackSampleRate, long dumpAfterNanos) {
+    int size = Integer.highestOneBit(Math.max(1, capacity - 1) << 1);
+    this.name = name;
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+    this.stackSampleRate = stackSampleRate;
+    this.dumpAfterNanos = dumpAfterNanos;
+  }
+
+  /** Returns the registration to pass to {@link #remove}, or null if the registry is full. */
+  @Nullable Entry add(ScheduledWork work) {
+    int start = cursor.getAndIncrement();
+    Throwable stack = stackSampleRate > 0 && start % stackSampleRate == 0
+        ? new Throwable("Scheduled at")
+        : null;
+    Entry entry = new Entry(work, System.nanoTime(), stack);
+    for (int i = 0; i < MAX_PROBES; i++) {
+      int slot = (start + i) & mask;
+      if (slots.get(slot) == null) {
+        entry.slot = slot;
+        if (slots.compareAndSet(slot, null, entry)) {
+          return entry;
+        }
+      }
+    }
+    untracked.incrementAndGet();
+    return null;
+  }
+
+  void remove(Entry entry) {
+    slots.compareAndSet(entry.slot, entry, null);
+  }
+
+  void onBusy() {
+    busySince = System.nanoTime();
+    dumped = false;
+  }
+
+  /** Log a dump once per busy period if it has lasted longer than the configured threshold. */
+  void checkBusy() {
+    if (dumpAfterNanos > 0L
+        && !dumped
+        && System.nanoTime() - busySince > dumpAfterNanos) {
+      dumped = true;
+      logger.log(Level.WARNING, dump());
+    }
+  }
+
+  String dump() {
+    long now = System.nanoTime();
+    StringBuilder running = new StringBuilder();
+    StringBuilder scheduled = new StringBuilder();
+    StringBuilder waiting = new StringBuilder();
+    int count = 0;
+    for (int i = 0, size = slots.length(); i < size; i++) {
+      Entry entry = slots.get(i);
+      if (entry == null) {
+        continue;
+      }
+      StringBuilder builder;
+      String state;
+      switch (entry.work.get()) {
+        case ScheduledWork.STATE_RUNNING:
+          builder = running;
+          state = "RUNNING";
+          break;
+        case ScheduledWork.STATE_SCHEDULED:
+          builder = scheduled;
+          state = "SCHEDULED";
+          break;
+        case ScheduledWork.STATE_IDLE:
+          builder = waiting;
+          state = "WAITING";
+          break;
+        default:
+          continue; // Finished since we looked at the slot.
+      }
+      count++;
+      builder.append("\n  ")
+          .append(state)
+          .append(" for ")
+          .append((now - entry.scheduledAt) / 1000000L)
+          .append("ms: ")
+          .append(entry.work.delegate.getClass().getName());
+      if (entry.stack != null) {
+        for (StackTraceElement element : entry.stack.getStackTrace()) {
+          builder.append("\n    at ").append(element);
+        }
+      }
+    }
+    return new StringBuilder()
+        .append(count)
+        .append(" in-flight tasks on ")
+        .append(name)
+        .append(" (")
+        .append(untracked.get())
+        .append(" not tracked while full):")
+        .append(running)
+        .append(scheduled)
+        .append(waiting)
+        .toString();
+  }
+
+  static final class Entry {
+    final ScheduledWork work;
+    final long scheduledAt;
+    @Nullable final Throwable stack;
+    int slot;
+
+    Entry(ScheduledWork work, long scheduledAt, @Nullable Throwable stack) {
+      this.work = work;
+      this.scheduledAt = scheduledAt;
+      this.stack = stack;
+    }
+  }
+}
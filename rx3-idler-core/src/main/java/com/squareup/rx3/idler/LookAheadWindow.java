@@ -0,0 +1,111 @@
+package com.squareup.rx3.idler;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import com.squareup.rx3.idler.DelegatingTrackingScheduler.ScheduledWork;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Delayed work which is not yet due within the look-ahead window. A single wake-up is kept
+ * scheduled on the delegate for the earliest entry, rather than one timer per task. Times are
+ * measured by the delegate's clock so that virtual-time schedulers behave as expected.
+ */
+@RestrictTo(LIBRARY)
+final class LookAheadWindow implements Runnable {
+  /** Queue size below which disposed entries are left to expire on their own. */
+  private static final int MIN_PURGE_SIZE = 64;
+
+  private static final Comparator<Entry> BY_WINDOW_TIME = new Comparator<Entry>() {
+    @Override public int compare(Entry a, Entry b) {
+      // Subtraction is overflow-safe for the nanoTime-style values the delegate clock returns.
+      long difference = a.windowAt - b.windowAt;
+      return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+    }
+  };
+
+  private final Scheduler delegate;
+  private final long windowNanos;
+  private final PriorityQueue<Entry> queue = new PriorityQueue<>(11, BY_WINDOW_TIME);
+  private int purgeAt = MIN_PURGE_SIZE;
+  private long wakeUpAt;
+  @Nullable private Disposable wakeUp;
+
+  LookAheadWindow(Scheduler delegate, long windowNanos) {
+    this.delegate = delegate;
+    this.windowNanos = windowNanos;
+  }
+
+  /** Mark {@code work} as busy once it is due in {@code delayNanos} less the window. */
+  synchronized void add(ScheduledWork work, long delayNanos) {
+    long now = delegate.now(NANOSECONDS);
+    Entry entry = new Entry(work, now + delayNanos - windowNanos);
+    if (queue.size() >= purgeAt) {
+      purge();
+    }
+    queue.add(entry);
+    if (queue.peek() == entry) {
+      scheduleWakeUp(entry.windowAt, now);
+    }
+  }
+
+  @Override public void run() {
+    List<ScheduledWork> due = new ArrayList<>();
+    synchronized (this) {
+      wakeUp = null;
+      long now = delegate.now(NANOSECONDS);
+      Entry entry;
+      while ((entry = queue.peek()) != null && entry.windowAt - now <= 0) {
+        queue.poll();
+        due.add(entry.work);
+      }
+      if (entry != null) {
+        scheduleWakeUp(entry.windowAt, now);
+      }
+    }
+    // Notify outside the lock since entering the window may synchronously report busy.
+    for (int i = 0, size = due.size(); i < size; i++) {
+      due.get(i).enterWindow();
+    }
+  }
+
+  private void scheduleWakeUp(long at, long now) {
+    Disposable wakeUp = this.wakeUp;
+    if (wakeUp != null) {
+      if (wakeUpAt - at <= 0) {
+        return; // Already scheduled to wake up in time.
+      }
+      wakeUp.dispose();
+    }
+    wakeUpAt = at;
+    this.wakeUp = delegate.scheduleDirect(this, at - now, NANOSECONDS);
+  }
+
+  /** Drop entries for work which was disposed before entering the window. */
+  private void purge() {
+    for (Iterator<Entry> iterator = queue.iterator(); iterator.hasNext(); ) {
+      if (iterator.next().work.isDisposed()) {
+        iterator.remove();
+      }
+    }
+    purgeAt = Math.max(MIN_PURGE_SIZE, queue.size() * 2);
+  }
+
+  private static final class Entry {
+    final ScheduledWork work;
+    final long windowAt;
+
+    Entry(ScheduledWork work, long windowAt) {
+      this.work = work;
+      this.windowAt = windowAt;
+    }
+  }
+}
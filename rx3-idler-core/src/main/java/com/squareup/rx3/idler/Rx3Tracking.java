@@ -0,0 +1,123 @@
+package com.squareup.rx3.idler;
+
+import androidx.annotation.CheckResult;
+import androidx.annotation.NonNull;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.functions.Function;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Factory methods for tracking whether a RxJava {@link Scheduler} is busy without depending on
+ * Espresso, such as in JVM tests or services.
+ * <p>
+ * <pre><code>
+ * TrackingScheduler scheduler = Rx3Tracking.wrap(Schedulers.io(), "IO");
+ * // Use 'scheduler' in place of Schedulers.io()...
+ * scheduler.awaitIdle(10, SECONDS);
+ * </code></pre>
+ */
+public final class Rx3Tracking {
+  /** Wraps the supplied {@link Scheduler} into one which tracks whether it is busy. */
+  @CheckResult @NonNull
+  public static TrackingScheduler wrap(@NonNull Scheduler scheduler, @NonNull String name) {
+    return wrap(scheduler, name, IdlerOptions.DEFAULT);
+  }
+
+  /**
+   * Wraps the supplied {@link Scheduler} into one which tracks whether it is busy, configured by
+   * {@code options}.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static TrackingScheduler wrap(@NonNull Scheduler scheduler, @NonNull String name,
+      @NonNull IdlerOptions options) {
+    if (scheduler == null) throw new NullPointerException("scheduler == null");
+    if (name == null) throw new NullPointerException("name == null");
+    if (options == null) throw new NullPointerException("options == null");
+    return new DelegatingTrackingScheduler(scheduler, name, options);
+  }
+
+  /**
+   * Wraps the supplied {@link ExecutorService} into one which counts its tasks in {@code group}.
+   * A task is busy from submission until it completes or is cancelled. Pass the result to
+   * {@code Schedulers.from()} to count Rx work and direct submissions together.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static ExecutorService wrap(@NonNull ExecutorService executor,
+      @NonNull TrackingGroup group) {
+    if (executor == null) throw new NullPointerException("executor == null");
+    if (group == null) throw new NullPointerException("group == null");
+    return new TrackingExecutorService(executor, group);
+  }
+
+  /**
+   * Wraps the supplied {@link ScheduledExecutorService} into one which counts its tasks in
+   * {@code group}. As with a {@link TrackingScheduler}, tasks without a delay are busy from
+   * submission until they complete or are cancelled, while delayed and periodic tasks are busy
+   * only while running.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static ScheduledExecutorService wrap(@NonNull ScheduledExecutorService executor,
+      @NonNull TrackingGroup group) {
+    if (executor == null) throw new NullPointerException("executor == null");
+    if (group == null) throw new NullPointerException("group == null");
+    return new TrackingExecutorService.Scheduled(executor, group);
+  }
+
+  /**
+   * Returns a function for {@code RxJavaPlugins.setScheduleHandler} which counts every task run by
+   * any scheduler in {@code group}, including custom schedulers and ones created before the handler
+   * was installed.
+   * <p>
+   * Note: The handler sees neither the delay nor the disposal of a task, so tasks are counted only
+   * while running. Work queued behind another task does not mark the group busy. Wrap the
+   * schedulers in the same group as well to count queued work.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static Function<Runnable, Runnable> scheduleHandler(@NonNull TrackingGroup group) {
+    if (group == null) throw new NullPointerException("group == null");
+    return new TrackingScheduleHandler(group);
+  }
+
+  /**
+   * Returns a transformer which counts each subscription in {@code group} from subscribe until a
+   * terminal event or disposal. Apply it with {@code compose()} to an {@code Observable},
+   * {@code Flowable}, {@code Single}, {@code Maybe} or {@code Completable} whose work happens off
+   * of any tracked scheduler.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  @CheckResult @NonNull
+  public static <T> TrackingTransformer<T> transformer(@NonNull TrackingGroup group) {
+    if (group == null) throw new NullPointerException("group == null");
+    return new TrackingTransformer<>(group);
+  }
+
+  /**
+   * Install {@code RxJavaPlugins} subscribe hooks which count each live subscription to a source
+   * selected by {@code filter} in {@code group}, from {@code onSubscribe} until a terminal event
+   * or disposal. This covers sources which deliver on their own threads without composing a
+   * {@linkplain #transformer(TrackingGroup) transformer} at each call site.
+   * <p>
+   * Hooks which were already installed keep running ahead of these. Calling this again replaces
+   * the group and filter of an earlier call rather than counting subscriptions twice. Remove the
+   * hooks with {@code RxJavaPlugins.reset()}.
+   * <p>
+   * Note: Operators directly downstream of a selected source cannot fuse with it, as the hooks
+   * wrap its observer. They fall back to their own queues, which costs some throughput.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  public static void installSubscribeHooks(@NonNull TrackingGroup group,
+      @NonNull SubscribeFilter filter) {
+    if (group == null) throw new NullPointerException("group == null");
+    if (filter == null) throw new NullPointerException("filter == null");
+    SubscribeHooks.install(group, filter);
+  }
+
+  private Rx3Tracking() {
+    throw new AssertionError("No instances");
+  }
+}
@@ -0,0 +1,76 @@
+package com.squareup.rx3.idler;
+
+import androidx.annotation.RestrictTo;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * Per-thread counts which only touch a shared total when a stripe moves between zero and
+ * non-zero, rather than on every increment and decrement.
+ * <p>
+ * The total is incremented before a stripe leaves zero and decremented only after it returns, so
+ * it never reads zero while any stripe is counting work. A thread which finds its stripe already
+ * busy can then rely on the total without touching it. The total may briefly over-count, which
+ * only delays the idle signal.
+ * <p>
+ * A decrement must use the stripe returned by its matching {@link #stripe()} call, which is not
+ * necessarily the current thread's.
+ */
+@RestrictTo(LIBRARY)
+final class StripedCounter {
+  /** Spacing between cells so that no two stripes share a cache line. */
+  private static final int PADDING = 16;
+
+  private final AtomicInteger total;
+  private final AtomicIntegerArray cells;
+  private final int mask;
+
+  StripedCounter(AtomicInteger total) {
+    this(total, Runtime.getRuntime().availableProcessors());
+  }
+
+  StripedCounter(AtomicInteger total, int concurrency) {
+    int stripes = Integer.highestOneBit(Math.max(1, concurrency - 1) << 1);
+    this.total = total;
+    this.cells = new AtomicIntegerArray(stripes * PADDING);
+    this.mask = stripes - 1;
+  }
+
+  /** The stripe for the current thread. */
+  int stripe() {
+    return (int) Thread.currentThread().getId() & mask;
+  }
+
+  /** Returns true if the total moved from zero to non-zero. */
+  boolean increment(int stripe) {
+    int index = stripe * PADDING;
+    boolean published = false;
+    boolean busy = false;
+    for (;;) {
+      int count = cells.get(index);
+      if (count == 0) {
+        if (!published) {
+          // Count the stripe in the total before it can be seen as non-zero.
+          busy = total.incrementAndGet() == 1;
+          published = true;
+        }
+        if (cells.compareAndSet(index, 0, 1)) {
+          return busy;
+        }
+      } else if (cells.compareAndSet(index, count, count + 1)) {
+        if (published) {
+          // Another thread counted the stripe first. Its share of the total keeps this above zero.
+          total.decrementAndGet();
+        }
+        return busy;
+      }
+    }
+  }
+
+  /** Returns true if the total moved from non-zero to zero. */
+  boolean decrement(int stripe) {
+    return cells.decrementAndGet(stripe * PADDING) == 0 && total.decrementAndGet() == 0;
+  }
+}
@@ -0,0 +1,39 @@
+package com.squareup.rx3.idler;
+
+import androidx.annotation.RestrictTo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * The CPU time of the current thread. Kept apart from {@link IdlerLatency} so that runtimes
+ * without {@code java.lang.management}, such as Android, only fail when it is first used.
+ */
+@RestrictTo(LIBRARY)
+final class ThreadCpuClock {
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  /** Whether {@link #now()} works here, enabling CPU time measurement if needed. */
+  static boolean isSupported() {
+    try {
+      if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+        return false;
+      }
+      if (!THREADS.isThreadCpuTimeEnabled()) {
+        THREADS.setThreadCpuTimeEnabled(true);
+      }
+      return true;
+    } catch (UnsupportedOperationException | SecurityException e) {
+      return false;
+    }
+  }
+
+  static long now() {
+    return THREADS.getCurrentThreadCpuTime();
+  }
+
+  private ThreadCpuClock() {
+    throw new AssertionError("No instances");
+  }
+}
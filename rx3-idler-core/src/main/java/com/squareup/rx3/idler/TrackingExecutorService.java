@@ -0,0 +1,399 @@
+package com.squareup.rx3.idler;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+
+/**
+ * An {@link ExecutorService} which counts its tasks in a {@link TrackingGroup} with the same rules
+ * as a {@link TrackingScheduler}: a task is busy from submission until it completes or is
+ * cancelled. {@code invokeAll} and {@code invokeAny} submit through {@link #execute} so their
+ * tasks are counted too.
+ */
+@RestrictTo(LIBRARY)
+class TrackingExecutorService extends AbstractExecutorService {
+  private final ExecutorService delegate;
+  final TrackingGroup group;
+  /**
+   * Tasks which have neither completed nor been cancelled. The delegate hands back its own futures
+   * for submitted and scheduled tasks from {@link #shutdownNow}, so this is how those are found.
+   */
+  final Set<TrackedTask<?>> tasks =
+      Collections.newSetFromMap(new ConcurrentHashMap<TrackedTask<?>, Boolean>());
+
+  TrackingExecutorService(ExecutorService delegate, TrackingGroup group) {
+    this.delegate = delegate;
+    this.group = group;
+  }
+
+  @Override public void execute(Runnable command) {
+    if (command == null) throw new NullPointerException("command == null");
+    TrackedTask<Void> task = new TrackedTask<>(group, tasks, command, null, true, false);
+    try {
+      delegate.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.cancel(false);
+      throw e;
+    }
+  }
+
+  @Override public Future<?> submit(Runnable task) {
+    return submit(task, null);
+  }
+
+  @Override public <T> Future<T> submit(Runnable task, @Nullable T result) {
+    if (task == null) throw new NullPointerException("task == null");
+    return submitTracked(new TrackedTask<>(group, tasks, task, result, true, false));
+  }
+
+  @Override public <T> Future<T> submit(Callable<T> task) {
+    if (task == null) throw new NullPointerException("task == null");
+    return submitTracked(new TrackedTask<>(group, tasks, task, true, false));
+  }
+
+  private <T> Future<T> submitTracked(TrackedTask<T> task) {
+    try {
+      task.setFuture(delegate.submit((Callable<T>) task));
+    } catch (RejectedExecutionException e) {
+      task.cancel(false);
+      throw e;
+    }
+    return task;
+  }
+
+  @Override public void shutdown() {
+    delegate.shutdown();
+  }
+
+  /**
+   * Tasks which will now never run are cancelled and no longer counted as busy. Executed tasks are
+   * returned as the runnables passed in, and submitted or scheduled ones as their futures.
+   */
+  @Override public List<Runnable> shutdownNow() {
+    List<Runnable> pending = delegate.shutdownNow();
+    Map<Future<?>, TrackedTask<?>> byFuture = new IdentityHashMap<>();
+    for (TrackedTask<?> task : tasks) {
+      Future<?> future = task.future;
+      if (future != null) {
+        byFuture.put(future, task);
+      }
+      task.cancelIfNotStarted();
+    }
+    List<Runnable> unwrapped = new ArrayList<>(pending.size());
+    for (Runnable runnable : pending) {
+      if (runnable instanceof TrackedTask) {
+        TrackedTask<?> task = (TrackedTask<?>) runnable;
+        unwrapped.add(task.runnable != null ? task.runnable : task);
+      } else {
+        TrackedTask<?> task = runnable instanceof Future ? byFuture.get(runnable) : null;
+        unwrapped.add(task != null ? task : runnable);
+      }
+    }
+    return unwrapped;
+  }
+
+  @Override public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override public boolean awaitTermination(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+
+  /** Adds the scheduling methods for a {@link ScheduledExecutorService} delegate. */
+  static final class Scheduled extends TrackingExecutorService
+      implements ScheduledExecutorService {
+    private final ScheduledExecutorService delegate;
+
+    Scheduled(ScheduledExecutorService delegate, TrackingGroup group) {
+      super(delegate, group);
+      this.delegate = delegate;
+    }
+
+    @Override public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+      if (command == null) throw new NullPointerException("command == null");
+      TrackedTask<Void> task = new TrackedTask<>(group, tasks, command, null, delay <= 0L, false);
+      try {
+        task.setFuture(delegate.schedule((Runnable) task, delay, unit));
+      } catch (RejectedExecutionException e) {
+        task.cancel(false);
+        throw e;
+      }
+      return task;
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+      if (callable == null) throw new NullPointerException("callable == null");
+      TrackedTask<V> task = new TrackedTask<>(group, tasks, callable, delay <= 0L, false);
+      try {
+        task.setFuture(delegate.schedule((Callable<V>) task, delay, unit));
+      } catch (RejectedExecutionException e) {
+        task.cancel(false);
+        throw e;
+      }
+      return task;
+    }
+
+    @Override public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay,
+        long period, TimeUnit unit) {
+      if (command == null) throw new NullPointerException("command == null");
+      TrackedTask<Void> task =
+          new TrackedTask<>(group, tasks, command, null, initialDelay <= 0L, true);
+      try {
+        task.setFuture(delegate.scheduleAtFixedRate(task, initialDelay, period, unit));
+      } catch (RejectedExecutionException e) {
+        task.cancel(false);
+        throw e;
+      }
+      return task;
+    }
+
+    @Override public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command,
+        long initialDelay, long delay, TimeUnit unit) {
+      if (command == null) throw new NullPointerException("command == null");
+      TrackedTask<Void> task =
+          new TrackedTask<>(group, tasks, command, null, initialDelay <= 0L, true);
+      try {
+        task.setFuture(delegate.scheduleWithFixedDelay(task, initialDelay, delay, unit));
+      } catch (RejectedExecutionException e) {
+        task.cancel(false);
+        throw e;
+      }
+      return task;
+    }
+  }
+
+  /**
+   * The state machine for a single task, following the scheduler's {@code ScheduledWork}. It is
+   * also the future returned for the task, forwarding to the delegate's own.
+   * <p>
+   * A task cancelled before it starts never runs, even if the delegate has already taken it. The
+   * delegate's future then completes normally, so this future reports the cancellation itself.
+   */
+  static final class TrackedTask<V> implements Runnable, Callable<V>, ScheduledFuture<V> {
+    static final int STATE_IDLE = 0; // --> STATE_RUNNING, STATE_CANCELLED
+    static final int STATE_SCHEDULED = 1; // --> STATE_RUNNING, STATE_CANCELLED
+    static final int STATE_RUNNING = 2; // --> STATE_IDLE, STATE_COMPLETED, STATE_CANCELLED
+    static final int STATE_COMPLETED = 3;
+    static final int STATE_CANCELLED = 4;
+
+    @SuppressWarnings("rawtypes") // Field updaters cannot be created for a parameterized type.
+    private static final AtomicIntegerFieldUpdater<TrackedTask> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(TrackedTask.class, "state");
+
+    private final TrackingGroup group;
+    private final Set<TrackedTask<?>> tasks;
+    /** The submitted runnable, or null if a callable was submitted. */
+    @Nullable final Runnable runnable;
+    @Nullable private final Callable<V> callable;
+    @Nullable private final V result;
+    private final boolean isPeriodic;
+    @Nullable volatile Future<?> future;
+    private volatile int state;
+    /** Whether {@link #cancel} stopped this task from running, whatever the delegate reports. */
+    private volatile boolean cancelledBeforeRun;
+
+    TrackedTask(TrackingGroup group, Set<TrackedTask<?>> tasks, Runnable runnable,
+        @Nullable V result, boolean immediate, boolean isPeriodic) {
+      this.group = group;
+      this.tasks = tasks;
+      this.state = immediate ? STATE_SCHEDULED : STATE_IDLE;
+      this.runnable = runnable;
+      this.callable = null;
+      this.result = result;
+      this.isPeriodic = isPeriodic;
+      if (immediate) {
+        group.startWork();
+      }
+      tasks.add(this);
+    }
+
+    TrackedTask(TrackingGroup group, Set<TrackedTask<?>> tasks, Callable<V> callable,
+        boolean immediate, boolean isPeriodic) {
+      this.group = group;
+      this.tasks = tasks;
+      this.state = immediate ? STATE_SCHEDULED : STATE_IDLE;
+      this.runnable = null;
+      this.callable = callable;
+      this.result = null;
+      this.isPeriodic = isPeriodic;
+      if (immediate) {
+        group.startWork();
+      }
+      tasks.add(this);
+    }
+
+    @Override public void run() {
+      try {
+        call();
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Exception e) {
+        throw new RuntimeException(e); // Unreachable for a runnable.
+      }
+    }
+
+    @Override public V call() throws Exception {
+      for (;;) {
+        int state = this.state;
+        switch (state) {
+          case STATE_IDLE:
+          case STATE_SCHEDULED:
+            if (STATE.compareAndSet(this, state, STATE_RUNNING)) {
+              if (state == STATE_IDLE) {
+                group.startWork();
+              }
+              boolean completed = false;
+              try {
+                V value;
+                if (callable != null) {
+                  value = callable.call();
+                } else {
+                  runnable.run();
+                  value = result;
+                }
+                completed = true;
+                return value;
+              } finally {
+                // A periodic task which threw will not run again.
+                if (isPeriodic && completed) {
+                  STATE.compareAndSet(this, STATE_RUNNING, STATE_IDLE);
+                } else if (STATE.compareAndSet(this, STATE_RUNNING, STATE_COMPLETED)) {
+                  tasks.remove(this);
+                }
+                group.stopWork();
+              }
+            }
+            break; // CAS failed, retry.
+
+          case STATE_CANCELLED:
+            return null; // Nothing to do. This future reports the cancellation.
+
+          default:
+            throw new IllegalStateException("Already running or completed");
+        }
+      }
+    }
+
+    @Override public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelledBeforeRun = false;
+      for (;;) {
+        int state = this.state;
+        if (state == STATE_CANCELLED || state == STATE_COMPLETED) {
+          break;
+        } else if (STATE.compareAndSet(this, state, STATE_CANCELLED)) {
+          onCancelled(state);
+          cancelledBeforeRun = state != STATE_RUNNING;
+          break;
+        }
+      }
+      // The delegate may already be calling this task, which returns without running it.
+      Future<?> future = this.future;
+      boolean futureCancelled = future != null && future.cancel(mayInterruptIfRunning);
+      return cancelledBeforeRun || futureCancelled;
+    }
+
+    /** Cancel this task unless it is already running, as its delegate will now never run it. */
+    void cancelIfNotStarted() {
+      for (;;) {
+        int state = this.state;
+        if (state != STATE_IDLE && state != STATE_SCHEDULED) {
+          return;
+        }
+        if (STATE.compareAndSet(this, state, STATE_CANCELLED)) {
+          onCancelled(state);
+          return;
+        }
+      }
+    }
+
+    private void onCancelled(int state) {
+      tasks.remove(this);
+      // If running, the finally block in call() makes the matching stopWork() call.
+      if (state == STATE_SCHEDULED) {
+        group.stopWork();
+      }
+      if (state != STATE_RUNNING) {
+        cancelledBeforeRun = true;
+      }
+    }
+
+    /** Set the delegate's future once scheduled, cancelling it if this task already was. */
+    void setFuture(Future<?> future) {
+      this.future = future;
+      if (state == STATE_CANCELLED) {
+        future.cancel(false);
+      }
+    }
+
+    @Override public boolean isCancelled() {
+      if (cancelledBeforeRun) {
+        return true;
+      }
+      Future<?> future = this.future;
+      return future != null ? future.isCancelled() : state == STATE_CANCELLED;
+    }
+
+    @Override public boolean isDone() {
+      if (cancelledBeforeRun) {
+        return true;
+      }
+      Future<?> future = this.future;
+      return future != null ? future.isDone() : state >= STATE_COMPLETED;
+    }
+
+    @SuppressWarnings("unchecked") // The delegate's future was created from this task.
+    @Override public V get() throws InterruptedException, ExecutionException {
+      if (cancelledBeforeRun) {
+        throw new CancellationException();
+      }
+      return (V) future.get();
+    }
+
+    @SuppressWarnings("unchecked") // The delegate's future was created from this task.
+    @Override public V get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      if (cancelledBeforeRun) {
+        throw new CancellationException();
+      }
+      return (V) future.get(timeout, unit);
+    }
+
+    @Override public long getDelay(TimeUnit unit) {
+      Future<?> future = this.future;
+      return future instanceof Delayed ? ((Delayed) future).getDelay(unit) : 0L;
+    }
+
+    @Override public int compareTo(Delayed other) {
+      long difference = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+      return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+    }
+  }
+}
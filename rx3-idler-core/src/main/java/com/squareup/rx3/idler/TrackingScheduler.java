@@ -0,0 +1,158 @@
+package com.squareup.rx3.idler;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import io.reactivex.rxjava3.core.Scheduler;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/** A RxJava {@link Scheduler} which tracks whether it has work in flight. */
+public abstract class TrackingScheduler extends Scheduler {
+  /**
+   * Block until every one of {@code schedulers} is idle at the same time, or until
+   * {@code timeout} elapses. Returns false on timeout. Schedulers which hand work to each other
+   * should share a {@linkplain IdlerOptions.Builder#group(TrackingGroup) group} so that a hand-off
+   * is not mistaken for idleness.
+   */
+  @SuppressWarnings("ConstantConditions") // Public API guarding.
+  public static boolean awaitAllIdle(long timeout, @NonNull TimeUnit unit,
+      @NonNull TrackingScheduler... schedulers) throws InterruptedException {
+    if (unit == null) throw new NullPointerException("unit == null");
+    if (schedulers == null) throw new NullPointerException("schedulers == null");
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (;;) {
+      boolean waited = false;
+      for (TrackingScheduler scheduler : schedulers) {
+        if (scheduler.awaitIdle(0L, NANOSECONDS)) {
+          continue;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (!scheduler.awaitIdle(remaining, NANOSECONDS)) {
+          return false;
+        }
+        waited = true;
+      }
+      if (!waited) {
+        return true; // All were idle in a single pass.
+      }
+    }
+  }
+
+  /** The name of this scheduler, used in logs and traces. */
+  @NonNull public abstract String getName();
+
+  /**
+   * Returns true when this scheduler has no work in flight. With
+   * {@link IdlerOptions.Builder#virtualTime(boolean)} this may also move the clock forward.
+   */
+  public abstract boolean isIdleNow();
+
+  /**
+   * Set the listener notified each time this scheduler goes from busy to idle, replacing any
+   * previous one. Schedulers in a {@linkplain #getGroup() group} are notified when the whole group
+   * goes idle.
+   */
+  public abstract void setIdleListener(@Nullable IdleListener listener);
+
+  /**
+   * Add a listener notified each time this scheduler goes from busy to idle, in addition to the
+   * one set by {@link #setIdleListener} and any others added. This lets several observers, such as
+   * Espresso and a metrics collector, listen at once.
+   */
+  public abstract void addIdleListener(@NonNull IdleListener listener);
+
+  /** Remove a listener added with {@link #addIdleListener}. */
+  public abstract void removeIdleListener(@NonNull IdleListener listener);
+
+  /**
+   * Returns the group this scheduler shares its busy state with, set by
+   * {@link IdlerOptions.Builder#group(TrackingGroup)}, or null.
+   */
+  @Nullable public TrackingGroup getGroup() {
+    return null;
+  }
+
+  /**
+   * Returns the live metrics for this scheduler, or null if they were not enabled with
+   * {@link IdlerOptions.Builder#metrics(boolean)}.
+   */
+  @Nullable public IdlerMetrics getMetrics() {
+    return null;
+  }
+
+  /**
+   * Returns the latency histograms for this scheduler, or null if they were not enabled with
+   * {@link IdlerOptions.Builder#latencyHistograms(boolean)}.
+   */
+  @Nullable public IdlerLatency getLatency() {
+    return null;
+  }
+
+  /**
+   * Returns a description of the tasks currently in flight on this scheduler, or null if tracking
+   * was not enabled with {@link IdlerOptions.Builder#trackInFlight(int)}.
+   */
+  @Nullable public String dumpInFlightWork() {
+    return null;
+  }
+
+  /**
+   * Block the calling thread until this scheduler has no work in flight, or until {@code timeout}
+   * elapses. Returns false on timeout. The thread is parked rather than polling and is woken by the
+   * transition to idle, without needing an {@link IdleListener}.
+   * <p>
+   * Unlike {@link #isIdleNow()}, this never moves a {@linkplain IdlerOptions.Builder#virtualTime
+   * virtual clock} forward.
+   */
+  public boolean awaitIdle(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+    // Schedulers from this library are woken directly. Poll for any other implementation.
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!isIdleNow()) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0L) {
+        return false;
+      }
+      LockSupport.parkNanos(this, Math.min(remaining, MILLISECONDS.toNanos(1)));
+    }
+    return true;
+  }
+
+  /**
+   * Write the events recorded with {@link IdlerOptions.Builder#trace(int)} to {@code writer} in
+   * the Chrome trace event JSON format.
+   *
+   * @throws IllegalStateException if tracing was not enabled.
+   */
+  public void writeTrace(@NonNull Writer writer) throws IOException {
+    throw new IllegalStateException("Tracing not enabled");
+  }
+
+  /**
+   * Move this scheduler's clock forward by {@code time} and run any delayed or periodic work which
+   * is then due. Requires {@link IdlerOptions.Builder#virtualTime(boolean)}.
+   *
+   * @throws IllegalStateException if virtual time was not enabled.
+   */
+  public void advanceTimeBy(long time, @NonNull TimeUnit unit) {
+    throw new IllegalStateException("Virtual time not enabled");
+  }
+
+  /**
+   * Move this scheduler's clock forward to the next pending non-periodic delayed work and run it,
+   * along with any periodic work due by then. Returns false if there was no such work. Requires
+   * {@link IdlerOptions.Builder#virtualTime(boolean)}.
+   *
+   * @throws IllegalStateException if virtual time was not enabled.
+   */
+  public boolean advanceTimeToNext() {
+    throw new IllegalStateException("Virtual time not enabled");
+  }
+}
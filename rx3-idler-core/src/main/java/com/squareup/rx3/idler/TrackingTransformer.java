@@ -0,0 +1,81 @@
+package com.squareup.rx3.idler;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.CompletableSource;
+import io.reactivex.rxjava3.core.CompletableTransformer;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.FlowableTransformer;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.MaybeSource;
+import io.reactivex.rxjava3.core.MaybeTransformer;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.ObservableSource;
+import io.reactivex.rxjava3.core.ObservableTransformer;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleSource;
+import io.reactivex.rxjava3.core.SingleTransformer;
+import io.reactivex.rxjava3.functions.Action;
+import io.reactivex.rxjava3.functions.Consumer;
+import org.reactivestreams.Publisher;
+
+/**
+ * Counts each subscription to the stream it is applied to in a {@link TrackingGroup}, from
+ * subscribe until a terminal event or disposal. This covers sources which deliver on their own
+ * threads, such as network callbacks or {@code Observable.create}, and so never reach a
+ * {@link TrackingScheduler}.
+ * <p>
+ * Create one with {@link Rx3Tracking#transformer(TrackingGroup)} and apply it with
+ * {@code compose()} to any of the five stream types.
+ * <p>
+ * Each subscription pays for the observers of the two operators this adds, {@code doOnSubscribe}
+ * and {@code doFinally}. Their callbacks are shared by every subscription and take no locks.
+ */
+public final class TrackingTransformer<T> implements ObservableTransformer<T, T>,
+    FlowableTransformer<T, T>, SingleTransformer<T, T>, MaybeTransformer<T, T>,
+    CompletableTransformer {
+  private final Tracker tracker;
+
+  TrackingTransformer(TrackingGroup group) {
+    this.tracker = new Tracker(group);
+  }
+
+  @Override public ObservableSource<T> apply(Observable<T> upstream) {
+    return upstream.doOnSubscribe(tracker).doFinally(tracker);
+  }
+
+  @Override public Publisher<T> apply(Flowable<T> upstream) {
+    return upstream.doOnSubscribe(tracker).doFinally(tracker);
+  }
+
+  @Override public SingleSource<T> apply(Single<T> upstream) {
+    return upstream.doOnSubscribe(tracker).doFinally(tracker);
+  }
+
+  @Override public MaybeSource<T> apply(Maybe<T> upstream) {
+    return upstream.doOnSubscribe(tracker).doFinally(tracker);
+  }
+
+  @Override public CompletableSource apply(Completable upstream) {
+    return upstream.doOnSubscribe(tracker).doFinally(tracker);
+  }
+
+  /**
+   * Starts work on subscribe and stops it from {@code doFinally}, which runs once per subscription
+   * whether it terminates or is disposed.
+   */
+  static final class Tracker implements Consumer<Object>, Action {
+    private final TrackingGroup group;
+
+    Tracker(TrackingGroup group) {
+      this.group = group;
+    }
+
+    @Override public void accept(Object subscription) {
+      group.startWork();
+    }
+
+    @Override public void run() {
+      group.stopWork();
+    }
+  }
+}
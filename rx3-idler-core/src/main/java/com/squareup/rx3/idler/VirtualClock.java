@@ -0,0 +1,215 @@
+package com.squareup.rx3.idler;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import com.squareup.rx3.idler.DelegatingTrackingScheduler.ScheduledWork;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static androidx.annotation.RestrictTo.Scope.LIBRARY;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A clock which runs at the delegate's pace but can be moved ahead of it. Delayed and periodic
+ * work waits here rather than in the delegate's timers, and is handed to the delegate to run
+ * immediately once it falls due on this clock. A single wake-up on the delegate releases work when
+ * it falls due without the clock being moved.
+ */
+@RestrictTo(LIBRARY)
+final class VirtualClock implements Runnable {
+  /** Queue size below which disposed entries are left to expire on their own. */
+  private static final int MIN_PURGE_SIZE = 64;
+
+  private static final Comparator<Entry> BY_DUE_TIME = new Comparator<Entry>() {
+    @Override public int compare(Entry a, Entry b) {
+      long difference = a.dueAt - b.dueAt;
+      if (difference == 0) {
+        difference = a.sequence - b.sequence; // Keep work due at the same time in FIFO order.
+      }
+      return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+    }
+  };
+
+  private final Scheduler delegate;
+  private final PriorityQueue<Entry> queue = new PriorityQueue<>(11, BY_DUE_TIME);
+  private volatile long offsetNanos;
+  private long sequence;
+  private int purgeAt = MIN_PURGE_SIZE;
+  private long wakeUpAt;
+  @Nullable private Disposable wakeUp;
+
+  VirtualClock(Scheduler delegate) {
+    this.delegate = delegate;
+  }
+
+  long now() {
+    return delegate.now(NANOSECONDS) + offsetNanos;
+  }
+
+  /**
+   * Hold {@code work} until it is due in {@code delayNanos}, then run it on {@code worker} or on
+   * the delegate directly if null. Periodic work is held again after each run.
+   */
+  synchronized Entry add(ScheduledWork work, long delayNanos, long periodNanos,
+      @Nullable Scheduler.Worker worker) {
+    Entry entry = new Entry(work, now() + Math.max(0L, delayNanos), periodNanos, worker);
+    enqueue(entry);
+    return entry;
+  }
+
+  /** Move this clock forward by {@code nanos} and release any work which is then due. */
+  void advanceBy(long nanos) {
+    synchronized (this) {
+      offsetNanos += nanos;
+      cancelWakeUp();
+    }
+    release();
+  }
+
+  /**
+   * Move this clock forward to the earliest pending non-periodic work, release it, and return
+   * true. Periodic work is only released if it falls due on the way. Returns false if there is no
+   * pending non-periodic work.
+   */
+  boolean advanceTimeToNext() {
+    synchronized (this) {
+      Entry next = null;
+      for (Entry entry : queue) {
+        if (entry.periodNanos <= 0L && !entry.work.isDisposed()
+            && (next == null || BY_DUE_TIME.compare(entry, next) < 0)) {
+          next = entry;
+        }
+      }
+      if (next == null) {
+        return false;
+      }
+      long ahead = next.dueAt - now();
+      if (ahead > 0L) {
+        offsetNanos += ahead;
+        cancelWakeUp();
+      }
+    }
+    release();
+    return true;
+  }
+
+  @Override public void run() {
+    synchronized (this) {
+      wakeUp = null;
+    }
+    release();
+  }
+
+  private void release() {
+    List<Entry> due = new ArrayList<>();
+    synchronized (this) {
+      long now = now();
+      Entry entry;
+      while ((entry = queue.peek()) != null && entry.dueAt - now <= 0) {
+        queue.poll();
+        due.add(entry);
+      }
+      if (entry != null) {
+        scheduleWakeUp(entry.dueAt, now);
+      }
+    }
+    // Hand off outside the lock since a delegate may run the work synchronously.
+    for (int i = 0, size = due.size(); i < size; i++) {
+      due.get(i).release();
+    }
+  }
+
+  private void enqueue(Entry entry) {
+    entry.sequence = sequence++;
+    if (queue.size() >= purgeAt) {
+      purge();
+    }
+    queue.add(entry);
+    if (queue.peek() == entry) {
+      scheduleWakeUp(entry.dueAt, now());
+    }
+  }
+
+  private void scheduleWakeUp(long at, long now) {
+    Disposable wakeUp = this.wakeUp;
+    if (wakeUp != null) {
+      if (wakeUpAt - at <= 0) {
+        return; // Already scheduled to wake up in time.
+      }
+      wakeUp.dispose();
+    }
+    wakeUpAt = at;
+    this.wakeUp = delegate.scheduleDirect(this, Math.max(0L, at - now), NANOSECONDS);
+  }
+
+  /** The pending wake-up was timed for the old offset so it has to be rescheduled. */
+  private void cancelWakeUp() {
+    Disposable wakeUp = this.wakeUp;
+    if (wakeUp != null) {
+      wakeUp.dispose();
+      this.wakeUp = null;
+    }
+  }
+
+  /** Drop entries for work which was disposed before it fell due. */
+  private void purge() {
+    for (Iterator<Entry> iterator = queue.iterator(); iterator.hasNext(); ) {
+      if (iterator.next().work.isDisposed()) {
+        iterator.remove();
+      }
+    }
+    purgeAt = Math.max(MIN_PURGE_SIZE, queue.size() * 2);
+  }
+
+  /** Pending work, and the Disposable which the work uses to cancel its run on the delegate. */
+  final class Entry implements Runnable, Disposable {
+    final ScheduledWork work;
+    final long periodNanos;
+    @Nullable private final Scheduler.Worker worker;
+    long dueAt;
+    long sequence;
+    @Nullable private volatile Disposable future;
+
+    Entry(ScheduledWork work, long dueAt, long periodNanos, @Nullable Scheduler.Worker worker) {
+      this.work = work;
+      this.dueAt = dueAt;
+      this.periodNanos = periodNanos;
+      this.worker = worker;
+    }
+
+    void release() {
+      work.enterWindow(); // Busy from now until it has run on the delegate.
+      Scheduler.Worker worker = this.worker;
+      future = worker != null ? worker.schedule(this) : delegate.scheduleDirect(this);
+      if (work.isDisposed()) {
+        dispose();
+      }
+    }
+
+    @Override public void run() {
+      work.run();
+      if (periodNanos > 0L && !work.isDisposed()) {
+        synchronized (VirtualClock.this) {
+          dueAt += periodNanos;
+          enqueue(this);
+        }
+      }
+    }
+
+    @Override public void dispose() {
+      Disposable future = this.future;
+      if (future != null) {
+        future.dispose();
+      }
+    }
+
+    @Override public boolean isDisposed() {
+      return work.isDisposed();
+    }
+  }
+}
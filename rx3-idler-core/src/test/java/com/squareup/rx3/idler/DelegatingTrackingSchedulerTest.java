@@ -0,0 +1,221 @@
+package com.squareup.rx3.idler;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class DelegatingTrackingSchedulerTest {
+  private final TestScheduler delegate = new TestScheduler();
+  private final TrackingScheduler scheduler = Rx3Tracking.wrap(delegate, "Bob");
+  private final CountingIdleListener listener = new CountingIdleListener();
+
+  @Test public void name() {
+    assertEquals("Bob", scheduler.getName());
+  }
+
+  @Test public void listenerNotifiedOnTransitionToIdle() {
+    scheduler.setIdleListener(listener);
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    assertFalse(scheduler.isIdleNow());
+    assertEquals(0, listener.count.get());
+    delegate.triggerActions();
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, listener.count.get());
+  }
+
+  @Test public void listenerReplacedAndCleared() {
+    CountingIdleListener first = new CountingIdleListener();
+    scheduler.setIdleListener(first);
+    scheduler.setIdleListener(listener);
+    scheduler.scheduleDirect(new CountingRunnable());
+    delegate.triggerActions();
+    assertEquals(0, first.count.get());
+    assertEquals(1, listener.count.get());
+
+    scheduler.setIdleListener(null);
+    scheduler.scheduleDirect(new CountingRunnable());
+    delegate.triggerActions();
+    assertEquals(1, listener.count.get());
+  }
+
+  @Test public void addedListenersNotifiedAlongsideSetListener() {
+    CountingIdleListener first = new CountingIdleListener();
+    CountingIdleListener second = new CountingIdleListener();
+    scheduler.setIdleListener(listener);
+    scheduler.addIdleListener(first);
+    scheduler.addIdleListener(second);
+    scheduler.scheduleDirect(new CountingRunnable());
+    delegate.triggerActions();
+    assertEquals(1, listener.count.get());
+    assertEquals(1, first.count.get());
+    assertEquals(1, second.count.get());
+
+    scheduler.removeIdleListener(first);
+    scheduler.setIdleListener(null);
+    scheduler.scheduleDirect(new CountingRunnable());
+    delegate.triggerActions();
+    assertEquals(1, listener.count.get());
+    assertEquals(1, first.count.get());
+    assertEquals(2, second.count.get());
+  }
+
+  @Test public void addNullListenerFails() {
+    try {
+      scheduler.addIdleListener(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("listener == null", e.getMessage());
+    }
+  }
+
+  @Test public void groupAddedListenerNotified() {
+    TrackingGroup group = new TrackingGroup("Group");
+    CountingIdleListener set = new CountingIdleListener();
+    group.setIdleListener(set);
+    group.addIdleListener(listener);
+    IdlerOptions options = new IdlerOptions.Builder().group(group).build();
+    TrackingScheduler member = Rx3Tracking.wrap(delegate, "Member", options);
+    member.scheduleDirect(new CountingRunnable());
+    delegate.triggerActions();
+    assertEquals(1, set.count.get());
+    assertEquals(1, listener.count.get());
+
+    group.removeIdleListener(listener);
+    member.scheduleDirect(new CountingRunnable());
+    delegate.triggerActions();
+    assertEquals(2, set.count.get());
+    assertEquals(1, listener.count.get());
+  }
+
+  @Test public void groupListenerNotifiedWhenWholeGroupIdle() {
+    TrackingGroup group = new TrackingGroup("Group");
+    group.setIdleListener(listener);
+    IdlerOptions options = new IdlerOptions.Builder().group(group).build();
+    TrackingScheduler first = Rx3Tracking.wrap(delegate, "First", options);
+    TrackingScheduler second = Rx3Tracking.wrap(delegate, "Second", options);
+    assertSame(group, first.getGroup());
+    assertNull(scheduler.getGroup());
+
+    first.scheduleDirect(new CountingRunnable(), 1, SECONDS);
+    second.scheduleDirect(new CountingRunnable());
+    assertFalse(group.isIdleNow());
+    assertFalse(first.isIdleNow());
+    delegate.triggerActions();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, listener.count.get());
+  }
+
+  @Test public void groupedSchedulersRecordTheirOwnBusyPeriods() {
+    IdlerOptions options = new IdlerOptions.Builder()
+        .group(new TrackingGroup("Group"))
+        .metrics(true)
+        .build();
+    TestScheduler otherDelegate = new TestScheduler();
+    TrackingScheduler first = Rx3Tracking.wrap(delegate, "First", options);
+    TrackingScheduler second = Rx3Tracking.wrap(otherDelegate, "Second", options);
+    long start = System.nanoTime();
+
+    // The first scheduler makes the group busy and the second makes it idle again.
+    first.scheduleDirect(new CountingRunnable());
+    second.scheduleDirect(new CountingRunnable());
+    delegate.triggerActions();
+    assertEquals(1, first.getMetrics().idleTransitionCount());
+    assertEquals(0, second.getMetrics().idleTransitionCount());
+    otherDelegate.triggerActions();
+    long elapsed = System.nanoTime() - start;
+    assertEquals(1, first.getMetrics().idleTransitionCount());
+    assertEquals(1, second.getMetrics().idleTransitionCount());
+    assertTrue(first.getMetrics().busyNanos() <= elapsed);
+    assertTrue(second.getMetrics().busyNanos() <= elapsed);
+  }
+
+  @Test public void ignoredDelayedWorkStaysIdleOnVirtualClock() {
+    IdlerOptions options = new IdlerOptions.Builder()
+        .virtualTime(true)
+        .busyPolicy((task, delayNanos, periodNanos) -> BusyPolicy.Busy.IGNORE)
+        .build();
+    TrackingScheduler scheduler = Rx3Tracking.wrap(delegate, "Bob", options);
+    CountingRunnable runnable = new CountingRunnable();
+    scheduler.createWorker().schedule(runnable, 30, SECONDS);
+
+    // Skips ahead to the ignored work without counting it.
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(30, scheduler.now(SECONDS));
+    delegate.triggerActions();
+    assertEquals(1, runnable.count());
+    assertTrue(scheduler.isIdleNow());
+  }
+
+  @Test public void completedWorkIsRemovedFromWorker() {
+    DelegatingTrackingScheduler.DelegatingWorker worker =
+        (DelegatingTrackingScheduler.DelegatingWorker) scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    worker.schedule(new CountingRunnable(), 1, SECONDS);
+    assertEquals(3, worker.disposables.size()); // Includes the delegate worker.
+    delegate.triggerActions();
+    assertEquals(2, worker.disposables.size());
+    delegate.advanceTimeBy(1, SECONDS);
+    assertEquals(1, worker.disposables.size());
+  }
+
+  @Test public void disposedWorkIsRemovedFromWorker() {
+    DelegatingTrackingScheduler.DelegatingWorker worker =
+        (DelegatingTrackingScheduler.DelegatingWorker) scheduler.createWorker();
+    Disposable disposable = worker.schedulePeriodically(new CountingRunnable(), 0, 1, SECONDS);
+    delegate.triggerActions();
+    assertEquals(2, worker.disposables.size());
+    disposable.dispose();
+    assertEquals(1, worker.disposables.size());
+  }
+
+  @Test public void nowFollowsDelegate() {
+    delegate.advanceTimeBy(5, SECONDS);
+    assertEquals(5, scheduler.now(SECONDS));
+    assertEquals(5, scheduler.createWorker().now(SECONDS));
+  }
+
+  @Test public void startAndShutdownForwardedToDelegate() {
+    LifecycleScheduler delegate = new LifecycleScheduler();
+    TrackingScheduler scheduler = Rx3Tracking.wrap(delegate, "Bob");
+    scheduler.shutdown();
+    assertEquals(1, delegate.shutdowns);
+    scheduler.start();
+    assertEquals(1, delegate.starts);
+  }
+
+  private static final class LifecycleScheduler extends Scheduler {
+    int starts;
+    int shutdowns;
+
+    @Override public Worker createWorker() {
+      return new TestScheduler().createWorker();
+    }
+
+    @Override public void start() {
+      starts++;
+    }
+
+    @Override public void shutdown() {
+      shutdowns++;
+    }
+  }
+
+  private static final class CountingIdleListener implements IdleListener {
+    final AtomicInteger count = new AtomicInteger();
+
+    @Override public void onIdle() {
+      count.incrementAndGet();
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.squareup.rx3.idler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/** Runs tasks on the test thread only when asked to. */
+class QueueExecutorService extends AbstractExecutorService {
+  private final Queue<Runnable> queue = new ArrayDeque<>();
+  private boolean shutdown;
+
+  void runAll() {
+    Runnable runnable;
+    while ((runnable = queue.poll()) != null) {
+      runnable.run();
+    }
+  }
+
+  @Override public void execute(Runnable command) {
+    if (shutdown) {
+      throw new RejectedExecutionException("Shut down");
+    }
+    queue.add(command);
+  }
+
+  @Override public void shutdown() {
+    shutdown = true;
+  }
+
+  @Override public List<Runnable> shutdownNow() {
+    shutdown = true;
+    List<Runnable> pending = new ArrayList<>(queue);
+    queue.clear();
+    return pending;
+  }
+
+  @Override public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override public boolean isTerminated() {
+    return shutdown && queue.isEmpty();
+  }
+
+  @Override public boolean awaitTermination(long timeout, TimeUnit unit) {
+    return isTerminated();
+  }
+}
@@ -0,0 +1,89 @@
+package com.squareup.rx3.idler;
+
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import java.util.concurrent.ExecutorService;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public final class Rx3TrackingTest {
+  @Test public void nullWrapArgumentsFails() {
+    try {
+      Rx3Tracking.wrap(null, "Bob");
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("scheduler == null", e.getMessage());
+    }
+    try {
+      Rx3Tracking.wrap(new TestScheduler(), null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+    try {
+      Rx3Tracking.wrap(new TestScheduler(), "Bob", null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("options == null", e.getMessage());
+    }
+  }
+
+  @Test public void nullExecutorWrapArgumentsFails() {
+    try {
+      Rx3Tracking.wrap((ExecutorService) null, new TrackingGroup("Bob"));
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("executor == null", e.getMessage());
+    }
+    try {
+      Rx3Tracking.wrap(new QueueExecutorService(), null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("group == null", e.getMessage());
+    }
+  }
+
+  @Test public void nullScheduleHandlerGroupFails() {
+    try {
+      Rx3Tracking.scheduleHandler(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("group == null", e.getMessage());
+    }
+  }
+
+  @Test public void nullTransformerGroupFails() {
+    try {
+      Rx3Tracking.transformer(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("group == null", e.getMessage());
+    }
+  }
+
+  @Test public void nullInstallSubscribeHooksArgumentsFail() {
+    SubscribeFilter filter = new SubscribeFilter.Builder().sourcePackage("com.example").build();
+    try {
+      Rx3Tracking.installSubscribeHooks(null, filter);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("group == null", e.getMessage());
+    }
+    try {
+      Rx3Tracking.installSubscribeHooks(new TrackingGroup("Bob"), null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("filter == null", e.getMessage());
+    }
+  }
+
+  @Test public void nullGroupNameFails() {
+    try {
+      new TrackingGroup(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+  }
+}
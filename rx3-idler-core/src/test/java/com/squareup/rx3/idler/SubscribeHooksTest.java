@@ -0,0 +1,213 @@
+package com.squareup.rx3.idler;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Observer;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+import io.reactivex.rxjava3.processors.PublishProcessor;
+import io.reactivex.rxjava3.subjects.CompletableSubject;
+import io.reactivex.rxjava3.subjects.MaybeSubject;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class SubscribeHooksTest {
+  private final TrackingGroup group = new TrackingGroup("Sources");
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  public SubscribeHooksTest() {
+    group.setIdleListener(idleCount::incrementAndGet);
+  }
+
+  @After public void tearDown() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test public void selectedSourceBusyUntilComplete() {
+    install(new SubscribeFilter.Builder().sourceClass(DataSource.class).build());
+    DataSource source = new DataSource();
+    TestObserver<String> observer = source.map(String::toUpperCase).test();
+    assertFalse(group.isIdleNow());
+    source.subject.onNext("Hello");
+    assertFalse(group.isIdleNow());
+    source.subject.onComplete();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+    observer.assertValue("HELLO").assertComplete();
+  }
+
+  @Test public void selectedSourceBusyUntilError() {
+    install(new SubscribeFilter.Builder().sourceClass(DataSource.class).build());
+    DataSource source = new DataSource();
+    TestObserver<String> observer = source.test();
+    source.subject.onError(new RuntimeException("Boom"));
+    assertTrue(group.isIdleNow());
+    observer.assertError(RuntimeException.class);
+  }
+
+  @Test public void selectedSourceBusyUntilDisposed() {
+    install(new SubscribeFilter.Builder().sourceClass(DataSource.class).build());
+    DataSource source = new DataSource();
+    Disposable disposable = source.subscribe();
+    assertFalse(group.isIdleNow());
+    disposable.dispose();
+    assertTrue(group.isIdleNow());
+    assertFalse(source.subject.hasObservers());
+    disposable.dispose();
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void otherSourcesNotCounted() {
+    install(new SubscribeFilter.Builder().sourceClass(DataSource.class).build());
+    PublishSubject<String> subject = PublishSubject.create();
+    subject.map(String::length).test();
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void sourcePackageSelectsSubpackages() {
+    install(new SubscribeFilter.Builder().sourcePackage("com.squareup").build());
+    DataSource source = new DataSource();
+    source.test();
+    assertFalse(group.isIdleNow());
+    source.subject.onComplete();
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void sourcePackageDoesNotMatchPrefixOfName() {
+    install(new SubscribeFilter.Builder().sourcePackage("com.squareup.rx3.id").build());
+    new DataSource().test();
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void flowableBusyUntilCancelled() {
+    install(new SubscribeFilter.Builder().sourceClass(PublishProcessor.class).build());
+    PublishProcessor<String> processor = PublishProcessor.create();
+    TestSubscriber<String> subscriber = processor.test();
+    assertFalse(group.isIdleNow());
+    processor.onNext("Hello");
+    subscriber.assertValue("Hello");
+    subscriber.cancel();
+    assertTrue(group.isIdleNow());
+    assertFalse(processor.hasSubscribers());
+  }
+
+  @Test public void singleBusyUntilSuccess() {
+    install(new SubscribeFilter.Builder().sourceClass(SingleSubject.class).build());
+    SingleSubject<String> subject = SingleSubject.create();
+    TestObserver<String> observer = subject.test();
+    assertFalse(group.isIdleNow());
+    subject.onSuccess("Hello");
+    assertTrue(group.isIdleNow());
+    observer.assertValue("Hello");
+  }
+
+  @Test public void maybeBusyUntilComplete() {
+    install(new SubscribeFilter.Builder().sourceClass(MaybeSubject.class).build());
+    MaybeSubject<String> subject = MaybeSubject.create();
+    TestObserver<String> observer = subject.test();
+    assertFalse(group.isIdleNow());
+    subject.onComplete();
+    assertTrue(group.isIdleNow());
+    observer.assertComplete();
+  }
+
+  @Test public void completableBusyUntilDisposed() {
+    install(new SubscribeFilter.Builder().sourceClass(CompletableSubject.class).build());
+    CompletableSubject subject = CompletableSubject.create();
+    TestObserver<Void> observer = subject.test();
+    assertFalse(group.isIdleNow());
+    observer.dispose();
+    assertTrue(group.isIdleNow());
+    assertFalse(subject.hasObservers());
+  }
+
+  @Test public void followUpSubscriptionKeepsGroupBusy() {
+    install(new SubscribeFilter.Builder().sourceClass(SingleSubject.class).build());
+    SingleSubject<String> first = SingleSubject.create();
+    SingleSubject<String> second = SingleSubject.create();
+    first.flatMap(value -> second).test();
+    first.onSuccess("Hello");
+    assertFalse(group.isIdleNow());
+    assertEquals(0, idleCount.get());
+    second.onSuccess("World");
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void existingHookStillRuns() {
+    AtomicInteger calls = new AtomicInteger();
+    RxJavaPlugins.setOnObservableSubscribe((source, observer) -> {
+      calls.incrementAndGet();
+      return observer;
+    });
+    install(new SubscribeFilter.Builder().sourceClass(DataSource.class).build());
+    DataSource source = new DataSource();
+    source.test();
+    assertEquals(2, calls.get()); // The source, then the subject behind it.
+    assertFalse(group.isIdleNow());
+  }
+
+  @Test public void installingAgainReplacesEarlierHooks() {
+    TrackingGroup other = new TrackingGroup("Other");
+    Rx3Tracking.installSubscribeHooks(other,
+        new SubscribeFilter.Builder().sourceClass(DataSource.class).build());
+    Object hook = RxJavaPlugins.getOnObservableSubscribe();
+    install(new SubscribeFilter.Builder().sourceClass(DataSource.class).build());
+    assertSame(hook, RxJavaPlugins.getOnObservableSubscribe());
+
+    DataSource source = new DataSource();
+    source.test();
+    assertTrue(other.isIdleNow());
+    assertFalse(group.isIdleNow());
+    source.subject.onComplete();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void filterRequiresSelection() {
+    try {
+      new SubscribeFilter.Builder().build();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("No source classes or packages selected", e.getMessage());
+    }
+  }
+
+  @Test public void filterNullArgumentsFail() {
+    try {
+      new SubscribeFilter.Builder().sourceClass(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("type == null", e.getMessage());
+    }
+    try {
+      new SubscribeFilter.Builder().sourcePackage(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("packageName == null", e.getMessage());
+    }
+  }
+
+  private void install(SubscribeFilter filter) {
+    Rx3Tracking.installSubscribeHooks(group, filter);
+  }
+
+  /** A custom source, as a data layer might deliver results from its own threads. */
+  static final class DataSource extends Observable<String> {
+    final PublishSubject<String> subject = PublishSubject.create();
+
+    @Override protected void subscribeActual(Observer<? super String> observer) {
+      subject.subscribe(observer);
+    }
+  }
+}
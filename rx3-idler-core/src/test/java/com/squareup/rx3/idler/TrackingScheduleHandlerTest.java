@@ -0,0 +1,78 @@
+package com.squareup.rx3.idler;
+
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+import io.reactivex.rxjava3.schedulers.SchedulerRunnableIntrospection;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class TrackingScheduleHandlerTest {
+  private final TrackingGroup group = new TrackingGroup("Work");
+  private final Function<Runnable, Runnable> handler = Rx3Tracking.scheduleHandler(group);
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  public TrackingScheduleHandlerTest() {
+    group.setIdleListener(idleCount::incrementAndGet);
+  }
+
+  @After public void tearDown() {
+    RxJavaPlugins.reset();
+  }
+
+  @Test public void busyOnlyWhileRunning() throws Throwable {
+    BusyCheckingRunnable runnable = new BusyCheckingRunnable();
+    Runnable tracked = handler.apply(runnable);
+    assertTrue(group.isIdleNow());
+    tracked.run();
+    assertEquals(1, runnable.busyRuns.get());
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void throwingRunnableReportsIdle() throws Throwable {
+    Runnable tracked = handler.apply(() -> {
+      throw new IllegalStateException("Boom");
+    });
+    try {
+      tracked.run();
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Boom", e.getMessage());
+    }
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void exposesWrappedRunnable() throws Throwable {
+    Runnable runnable = new CountingRunnable();
+    Runnable tracked = handler.apply(runnable);
+    assertSame(runnable, ((SchedulerRunnableIntrospection) tracked).getWrappedRunnable());
+  }
+
+  @Test public void installedHandlerCountsUnwrappedSchedulers() {
+    RxJavaPlugins.setScheduleHandler(handler);
+    QueueExecutorService executor = new QueueExecutorService();
+    BusyCheckingRunnable runnable = new BusyCheckingRunnable();
+    Schedulers.from(executor).scheduleDirect(runnable);
+    executor.runAll();
+    assertEquals(1, runnable.busyRuns.get());
+    assertTrue(group.isIdleNow());
+  }
+
+  private final class BusyCheckingRunnable implements Runnable {
+    final AtomicInteger busyRuns = new AtomicInteger();
+
+    @Override public void run() {
+      if (!group.isIdleNow()) {
+        busyRuns.incrementAndGet();
+      }
+    }
+  }
+}
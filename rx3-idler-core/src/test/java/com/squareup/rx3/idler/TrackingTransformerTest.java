@@ -0,0 +1,137 @@
+package com.squareup.rx3.idler;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.processors.PublishProcessor;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+import io.reactivex.rxjava3.subjects.CompletableSubject;
+import io.reactivex.rxjava3.subjects.MaybeSubject;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class TrackingTransformerTest {
+  private final TrackingGroup group = new TrackingGroup("Network");
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  public TrackingTransformerTest() {
+    group.setIdleListener(idleCount::incrementAndGet);
+  }
+
+  @Test public void observableBusyUntilComplete() {
+    PublishSubject<String> subject = PublishSubject.create();
+    TestObserver<String> observer =
+        subject.compose(Rx3Tracking.<String>transformer(group)).test();
+    assertFalse(group.isIdleNow());
+    subject.onNext("Hello");
+    assertFalse(group.isIdleNow());
+    subject.onComplete();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+    observer.assertValue("Hello").assertComplete();
+  }
+
+  @Test public void observableBusyUntilError() {
+    PublishSubject<String> subject = PublishSubject.create();
+    subject.compose(Rx3Tracking.<String>transformer(group)).test();
+    assertFalse(group.isIdleNow());
+    subject.onError(new RuntimeException("Boom"));
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void observableBusyUntilDisposed() {
+    PublishSubject<String> subject = PublishSubject.create();
+    Disposable disposable = subject.compose(Rx3Tracking.<String>transformer(group)).subscribe();
+    assertFalse(group.isIdleNow());
+    disposable.dispose();
+    assertTrue(group.isIdleNow());
+    assertFalse(subject.hasObservers());
+  }
+
+  @Test public void eachSubscriptionCounted() {
+    PublishSubject<String> subject = PublishSubject.create();
+    Observable<String> tracked = subject.compose(Rx3Tracking.transformer(group));
+    Disposable first = tracked.subscribe();
+    Disposable second = tracked.subscribe();
+    first.dispose();
+    assertFalse(group.isIdleNow());
+    second.dispose();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void synchronousSourceIdleAfterSubscribe() {
+    Observable.just("Hello").compose(Rx3Tracking.transformer(group)).test().assertComplete();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void flowableBusyUntilCancelled() {
+    PublishProcessor<String> processor = PublishProcessor.create();
+    TestSubscriber<String> subscriber =
+        processor.compose(Rx3Tracking.<String>transformer(group)).test();
+    assertFalse(group.isIdleNow());
+    subscriber.cancel();
+    assertTrue(group.isIdleNow());
+    assertFalse(processor.hasSubscribers());
+  }
+
+  @Test public void flowableBusyUntilComplete() {
+    PublishProcessor<String> processor = PublishProcessor.create();
+    processor.compose(Rx3Tracking.<String>transformer(group)).test();
+    assertFalse(group.isIdleNow());
+    processor.onComplete();
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void singleBusyUntilSuccess() {
+    SingleSubject<String> subject = SingleSubject.create();
+    Single<String> tracked = subject.compose(Rx3Tracking.transformer(group));
+    TestObserver<String> observer = tracked.test();
+    assertFalse(group.isIdleNow());
+    subject.onSuccess("Hello");
+    assertTrue(group.isIdleNow());
+    observer.assertValue("Hello");
+  }
+
+  @Test public void maybeBusyUntilDisposed() {
+    MaybeSubject<String> subject = MaybeSubject.create();
+    Maybe<String> tracked = subject.compose(Rx3Tracking.transformer(group));
+    TestObserver<String> observer = tracked.test();
+    assertFalse(group.isIdleNow());
+    observer.dispose();
+    assertTrue(group.isIdleNow());
+  }
+
+  @Test public void completableBusyUntilComplete() {
+    CompletableSubject subject = CompletableSubject.create();
+    Completable tracked = subject.compose(Rx3Tracking.transformer(group));
+    TestObserver<Void> observer = tracked.test();
+    assertFalse(group.isIdleNow());
+    subject.onComplete();
+    assertTrue(group.isIdleNow());
+    observer.assertComplete();
+  }
+
+  @Test public void sharesGroupWithSchedulers() {
+    TrackingScheduler scheduler = Rx3Tracking.wrap(new TestScheduler(), "Test",
+        new IdlerOptions.Builder().group(group).build());
+    PublishSubject<String> subject = PublishSubject.create();
+    subject.compose(Rx3Tracking.<String>transformer(group)).test();
+    assertFalse(scheduler.isIdleNow());
+    subject.onComplete();
+    assertTrue(scheduler.isIdleNow());
+  }
+}
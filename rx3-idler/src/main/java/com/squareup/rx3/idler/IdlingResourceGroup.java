@@ -0,0 +1,35 @@
+package com.squareup.rx3.idler;
+
+import androidx.annotation.NonNull;
+import androidx.test.espresso.IdlingRegistry;
+import androidx.test.espresso.IdlingResource;
+
+/**
+ * A single {@link IdlingResource} for every scheduler created with
+ * {@link IdlerOptions.Builder#group(TrackingGroup)}. The schedulers share one busy count, so
+ * a task which schedules follow-up work on another scheduler in the group keeps the group busy
+ * through the hand-off. Separate resources would each be briefly idle at the same time and let
+ * Espresso continue early.
+ * <p>
+ * <pre><code>
+ * IdlerOptions options = new IdlerOptions.Builder()
+ *     .group(new IdlingResourceGroup("RxJava 3.x Schedulers"))
+ *     .build();
+ * RxJavaPlugins.setInitComputationSchedulerHandler(
+ *     Rx3Idler.create("RxJava 3.x Computation Scheduler", options));
+ * RxJavaPlugins.setInitIoSchedulerHandler(
+ *     Rx3Idler.create("RxJava 3.x IO Scheduler", options));
+ * </code></pre>
+ * Schedulers from {@link Rx3Idler#create} register the group in place of themselves. Schedulers
+ * from {@link Rx3Idler#wrap} require that you
+ * {@linkplain IdlingRegistry#register(IdlingResource...) register} the group yourself.
+ */
+public final class IdlingResourceGroup extends TrackingGroup implements IdlingResource {
+  public IdlingResourceGroup(@NonNull String name) {
+    super(name);
+  }
+
+  @Override public void registerIdleTransitionCallback(ResourceCallback callback) {
+    setIdleListener(ResourceCallbackListener.wrap(callback));
+  }
+}
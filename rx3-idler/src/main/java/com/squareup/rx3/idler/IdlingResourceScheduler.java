@@ -4,5 +4,5 @@ import androidx.test.espresso.IdlingResource;
 import io.reactivex.rxjava3.core.Scheduler;
 
 /** A RxJava {@link Scheduler} that is also an Espresso {@link IdlingResource}. */
-public abstract class IdlingResourceScheduler extends Scheduler implements IdlingResource {
+public abstract class IdlingResourceScheduler extends TrackingScheduler implements IdlingResource {
 }
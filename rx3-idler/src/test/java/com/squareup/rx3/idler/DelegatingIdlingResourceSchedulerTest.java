@@ -1,7 +1,15 @@
 package com.squareup.rx3.idler;
 
 import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.schedulers.TestScheduler;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
 import org.junit.Test;
@@ -10,7 +18,9 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public final class DelegatingIdlingResourceSchedulerTest {
   private final TestScheduler delegate = new TestScheduler();
@@ -31,6 +41,23 @@ public final class DelegatingIdlingResourceSchedulerTest {
     assertIdle(0);
   }
 
+  @Test public void addedListenerNotifiedAlongsideEspresso() {
+    AtomicInteger addedCount = new AtomicInteger();
+    IdleListener added = addedCount::incrementAndGet;
+    scheduler.addIdleListener(added);
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    delegate.triggerActions();
+    assertIdle(1);
+    assertEquals(1, addedCount.get());
+
+    scheduler.removeIdleListener(added);
+    worker.schedule(new CountingRunnable());
+    delegate.triggerActions();
+    assertIdle(2);
+    assertEquals(1, addedCount.get());
+  }
+
   @Test public void scheduledWorkReportsBusy() {
     Scheduler.Worker worker = scheduler.createWorker();
     worker.schedule(new CountingRunnable());
@@ -108,6 +135,615 @@ public final class DelegatingIdlingResourceSchedulerTest {
     assertIdle(0);
   }
 
+  @Test public void scheduleDirectReportsBusy() {
+    CountingRunnable action = new CountingRunnable();
+    scheduler.scheduleDirect(action);
+    assertBusy();
+    delegate.triggerActions();
+    assertEquals(1, action.count());
+    assertIdle(1);
+  }
+
+  @Test public void scheduleDirectDisposedReportsIdle() {
+    CountingRunnable action = new CountingRunnable();
+    Disposable disposable = scheduler.scheduleDirect(action);
+    disposable.dispose();
+    assertTrue(disposable.isDisposed());
+    assertIdle(1);
+    delegate.triggerActions();
+    assertEquals(0, action.count());
+  }
+
+  @Test public void scheduleDirectWithNonZeroDelayReportsIdle() {
+    CountingRunnable action = new CountingRunnable();
+    scheduler.scheduleDirect(action, 1, SECONDS);
+    assertIdle(0);
+    delegate.advanceTimeBy(1, SECONDS);
+    assertEquals(1, action.count());
+    assertIdle(1);
+  }
+
+  @Test public void schedulePeriodicallyDirectReportsBusyOnlyWhileRunning() {
+    CountingRunnable action = new CountingRunnable();
+    Disposable disposable = scheduler.schedulePeriodicallyDirect(action, 0, 1, SECONDS);
+    assertBusy();
+    delegate.triggerActions();
+    assertEquals(1, action.count());
+    assertIdle(1);
+    delegate.advanceTimeBy(1, SECONDS);
+    assertEquals(2, action.count());
+    assertIdle(2);
+    disposable.dispose();
+    delegate.advanceTimeBy(1, SECONDS);
+    assertEquals(2, action.count());
+    assertIdle(2);
+  }
+
+  @Test public void stripedCounterReportsBusyUntilAllWorkCompletes() {
+    IdlingResourceScheduler scheduler = Rx3Idler.wrap(delegate, "Bob",
+        new IdlerOptions.Builder().stripedCounter(true).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    worker.schedule(new CountingRunnable());
+    assertFalse(scheduler.isIdleNow());
+    worker.schedule(new CountingRunnable()).dispose();
+    assertFalse(scheduler.isIdleNow());
+    delegate.triggerActions();
+    assertTrue(scheduler.isIdleNow());
+  }
+
+  @Test public void stripedCounterReachesIdleAcrossThreads() throws InterruptedException {
+    IdlingResourceScheduler scheduler = Rx3Idler.wrap(Schedulers.computation(), "Bob",
+        new IdlerOptions.Builder().stripedCounter(true).build());
+    AtomicInteger idleCount = new AtomicInteger();
+    scheduler.registerIdleTransitionCallback(idleCount::incrementAndGet);
+    int threads = 4;
+    int tasks = 10000;
+    CountDownLatch latch = new CountDownLatch(threads * tasks);
+    for (int i = 0; i < threads; i++) {
+      scheduler.scheduleDirect(() -> {
+        for (int j = 0; j < tasks; j++) {
+          scheduler.scheduleDirect(latch::countDown);
+        }
+      });
+    }
+    assertTrue(latch.await(10, SECONDS));
+    long deadline = System.nanoTime() + SECONDS.toNanos(10);
+    while (!scheduler.isIdleNow() && System.nanoTime() < deadline) {
+      Thread.yield();
+    }
+    assertTrue(scheduler.isIdleNow());
+    assertTrue(idleCount.get() > 0);
+  }
+
+  @Test public void lookAheadWorkWithinWindowReportsBusy() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().lookAhead(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    CountingRunnable action = new CountingRunnable();
+    worker.schedule(action, 100, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertEquals(1, action.count());
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void lookAheadWorkBeyondWindowReportsBusyOnceWithinWindow() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().lookAhead(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    CountingRunnable action = new CountingRunnable();
+    worker.schedule(action, 1, SECONDS);
+    assertTrue(scheduler.isIdleNow());
+    delegate.advanceTimeBy(899, MILLISECONDS);
+    assertTrue(scheduler.isIdleNow());
+    delegate.advanceTimeBy(1, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertEquals(1, action.count());
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void lookAheadWorkEntersWindowInDueOrder() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().lookAhead(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable(), 2, SECONDS);
+    worker.schedule(new CountingRunnable(), 1, SECONDS);
+    delegate.advanceTimeBy(900, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertTrue(scheduler.isIdleNow());
+    delegate.advanceTimeBy(900, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(2, idleCount.get());
+  }
+
+  @Test public void lookAheadWorkDisposedBeforeWindowReportsIdle() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().lookAhead(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable(), 1, SECONDS).dispose();
+    delegate.advanceTimeBy(1, SECONDS);
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+  }
+
+  @Test public void lookAheadWorkDisposedWithinWindowReportsIdle() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().lookAhead(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    Disposable disposable = worker.schedule(new CountingRunnable(), 1, SECONDS);
+    delegate.advanceTimeBy(950, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    disposable.dispose();
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void busyPolicyIgnoredWorkReportsIdle() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().busyPolicy(fixedPolicy(BusyPolicy.Busy.IGNORE)).build());
+    IdleCheckingRunnable action = new IdleCheckingRunnable(scheduler);
+    scheduler.createWorker().schedule(action);
+    assertTrue(scheduler.isIdleNow());
+    delegate.triggerActions();
+    assertTrue(action.idleWhileRunning);
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+  }
+
+  @Test public void busyPolicyWhileRunningWorkReportsBusyOnlyWhileRunning() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(new IdlerOptions.Builder()
+        .lookAhead(100, MILLISECONDS)
+        .busyPolicy(fixedPolicy(BusyPolicy.Busy.WHILE_RUNNING))
+        .build());
+    IdleCheckingRunnable action = new IdleCheckingRunnable(scheduler);
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(action);
+    worker.schedule(new CountingRunnable(), 50, MILLISECONDS);
+    assertTrue(scheduler.isIdleNow());
+    delegate.triggerActions();
+    assertFalse(action.idleWhileRunning);
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void busyPolicyWhileRunningWorkDisposedReportsIdle() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(new IdlerOptions.Builder()
+        .busyPolicy(fixedPolicy(BusyPolicy.Busy.WHILE_RUNNING))
+        .build());
+    scheduler.createWorker().schedule(new CountingRunnable()).dispose();
+    delegate.triggerActions();
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+  }
+
+  @Test public void busyPolicySeesUnwrappedTaskDelayAndPeriod() throws Throwable {
+    List<Object> decisions = new ArrayList<>();
+    IdlingResourceScheduler scheduler = wrapWithCallback(new IdlerOptions.Builder()
+        .busyPolicy((task, delayNanos, periodNanos) -> {
+          decisions.add(task);
+          decisions.add(delayNanos);
+          decisions.add(periodNanos);
+          return BusyPolicy.Busy.COUNT;
+        })
+        .build());
+    CountingRunnable action = new CountingRunnable();
+    Runnable wrapped = Rx3Tracking.scheduleHandler(new TrackingGroup("Group")).apply(action);
+    scheduler.schedulePeriodicallyDirect(wrapped, 1, 2, SECONDS);
+    assertEquals(Arrays.asList(action, SECONDS.toNanos(1), SECONDS.toNanos(2)), decisions);
+  }
+
+  @Test public void metricsDisabledByDefault() {
+    assertNull(scheduler.getMetrics());
+  }
+
+  @Test public void metricsCountWork() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().metrics(true).build());
+    IdlerMetrics metrics = scheduler.getMetrics();
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    worker.schedule(new CountingRunnable(), 1, SECONDS);
+    worker.schedule(new CountingRunnable(), 2, SECONDS).dispose();
+    worker.schedulePeriodically(new CountingRunnable(), 0, 1, SECONDS);
+    assertEquals(1, metrics.immediateCount());
+    assertEquals(2, metrics.delayedCount());
+    assertEquals(1, metrics.periodicCount());
+    assertEquals(1, metrics.disposedBeforeRunCount());
+    assertEquals(0, metrics.runCount());
+
+    delegate.triggerActions();
+    assertEquals(2, metrics.runCount());
+    assertEquals(1, metrics.idleTransitionCount());
+
+    delegate.advanceTimeBy(1, SECONDS);
+    assertEquals(4, metrics.runCount());
+    assertEquals(3, metrics.idleTransitionCount());
+    assertTrue(metrics.busyNanos() >= metrics.longestBusyNanos());
+    worker.dispose();
+    assertEquals(1, metrics.disposedBeforeRunCount());
+  }
+
+  @Test public void latencyDisabledByDefault() {
+    assertNull(scheduler.getLatency());
+  }
+
+  @Test public void latencyHistogramsRecordEachRun() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().latencyHistograms(true).build());
+    IdlerLatency latency = scheduler.getLatency();
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    worker.schedule(new CountingRunnable(), 1, SECONDS);
+    worker.schedulePeriodically(new CountingRunnable(), 1, 1, SECONDS);
+    delegate.triggerActions();
+    assertEquals(1, latency.queueDelay().count());
+    assertEquals(1, latency.runTime().count());
+    assertNull(latency.cpuTime());
+
+    delegate.advanceTimeBy(2, SECONDS);
+    assertEquals(4, latency.queueDelay().count());
+    assertEquals(4, latency.runTime().count());
+  }
+
+  @Test public void threadCpuTimeRecordsEachRun() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(new IdlerOptions.Builder()
+        .latencyHistograms(true)
+        .threadCpuTime(true)
+        .build());
+    scheduler.createWorker().schedule(new CountingRunnable());
+    delegate.triggerActions();
+    assertEquals(1, scheduler.getLatency().cpuTime().count());
+  }
+
+  @Test public void metricsTrackLiveTaskCounts() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().metrics(true).build());
+    IdlerMetrics metrics = scheduler.getMetrics();
+    AtomicInteger runningWhileRunning = new AtomicInteger();
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(() -> runningWhileRunning.set(metrics.runningTasks()));
+    worker.schedule(new CountingRunnable());
+    worker.schedule(new CountingRunnable(), 1, SECONDS);
+    Disposable delayed = worker.schedule(new CountingRunnable(), 2, SECONDS);
+    Disposable periodic = worker.schedulePeriodically(new CountingRunnable(), 0, 1, SECONDS);
+    assertTaskCounts(metrics, 3, 0, 2, 1);
+
+    delayed.dispose();
+    assertTaskCounts(metrics, 3, 0, 1, 1);
+
+    delegate.triggerActions();
+    assertEquals(1, runningWhileRunning.get());
+    assertTaskCounts(metrics, 0, 0, 2, 1);
+
+    delegate.advanceTimeBy(1, SECONDS);
+    assertTaskCounts(metrics, 0, 0, 1, 1);
+
+    periodic.dispose();
+    assertTaskCounts(metrics, 0, 0, 0, 0);
+  }
+
+  @Test public void inFlightTrackingDisabledByDefault() {
+    assertNull(scheduler.dumpInFlightWork());
+  }
+
+  @Test public void inFlightWorkIsDumpedUntilCompleteOrDisposed() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().trackInFlight(8).build());
+    assertEquals("0 in-flight tasks on Bob (0 not tracked while full):",
+        scheduler.dumpInFlightWork());
+
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    Disposable delayed = worker.schedule(new CountingRunnable(), 1, SECONDS);
+    String dump = scheduler.dumpInFlightWork();
+    assertTrue(dump, dump.startsWith("2 in-flight tasks on Bob (0 not tracked while full):"));
+    assertTrue(dump, dump.contains("\n  SCHEDULED for "));
+    assertTrue(dump, dump.contains("\n  WAITING for "));
+    assertTrue(dump, dump.contains(CountingRunnable.class.getName()));
+
+    delegate.triggerActions();
+    dump = scheduler.dumpInFlightWork();
+    assertTrue(dump, dump.startsWith("1 in-flight tasks on Bob"));
+    assertFalse(dump, dump.contains("SCHEDULED"));
+
+    delayed.dispose();
+    assertEquals("0 in-flight tasks on Bob (0 not tracked while full):",
+        scheduler.dumpInFlightWork());
+  }
+
+  @Test public void inFlightWorkBeyondCapacityIsCounted() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().trackInFlight(2).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    worker.schedule(new CountingRunnable());
+    worker.schedule(new CountingRunnable());
+    String dump = scheduler.dumpInFlightWork();
+    assertTrue(dump, dump.startsWith("2 in-flight tasks on Bob (1 not tracked while full):"));
+
+    delegate.triggerActions();
+    assertIdle(1);
+  }
+
+  @Test public void inFlightDumpIncludesSampledStacks() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().trackInFlight(8).sampleStacks(1).build());
+    scheduler.createWorker().schedule(new CountingRunnable());
+    String dump = scheduler.dumpInFlightWork();
+    assertTrue(dump, dump.contains("inFlightDumpIncludesSampledStacks"));
+  }
+
+  @Test public void coalesceIdleReportsAfterDelay() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().coalesceIdle(100, MILLISECONDS).build());
+    scheduler.createWorker().schedule(new CountingRunnable());
+    assertFalse(scheduler.isIdleNow());
+    delegate.triggerActions();
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void coalesceIdleReportsRepeatedTransitionsOnce() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(
+        new IdlerOptions.Builder().coalesceIdle(100, MILLISECONDS).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    for (int i = 0; i < 3; i++) {
+      worker.schedule(new CountingRunnable());
+      delegate.triggerActions();
+    }
+    assertTrue(scheduler.isIdleNow());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void coalesceIdleSkipsReportWhenBusyAgain() {
+    IdlingResourceScheduler scheduler = wrapWithCallback(new IdlerOptions.Builder()
+        .coalesceIdle(100, MILLISECONDS)
+        .lookAhead(100, MILLISECONDS)
+        .build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable(), 150, MILLISECONDS);
+    worker.schedule(new CountingRunnable());
+    delegate.triggerActions();
+    assertTrue(scheduler.isIdleNow());
+
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertFalse(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+
+    delegate.advanceTimeBy(50, MILLISECONDS);
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, idleCount.get());
+    delegate.advanceTimeBy(100, MILLISECONDS);
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void groupStaysBusyAcrossHandOff() {
+    IdlingResourceGroup group = new IdlingResourceGroup("Group");
+    AtomicInteger groupIdleCount = new AtomicInteger();
+    group.registerIdleTransitionCallback(groupIdleCount::incrementAndGet);
+    IdlerOptions options = new IdlerOptions.Builder().group(group).build();
+    TestScheduler otherDelegate = new TestScheduler();
+    IdlingResourceScheduler first = Rx3Idler.wrap(delegate, "First", options);
+    IdlingResourceScheduler second = Rx3Idler.wrap(otherDelegate, "Second", options);
+
+    first.scheduleDirect(() -> second.scheduleDirect(new CountingRunnable()));
+    assertFalse(group.isIdleNow());
+    delegate.triggerActions();
+    assertFalse(group.isIdleNow());
+    assertEquals(0, groupIdleCount.get());
+
+    otherDelegate.triggerActions();
+    assertTrue(group.isIdleNow());
+    assertEquals(1, groupIdleCount.get());
+  }
+
+  @Test public void virtualTimeSkipsToDelayedWorkWhenIdle() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().virtualTime(true).build());
+    CountingRunnable action = new CountingRunnable();
+    scheduler.createWorker().schedule(action, 30, SECONDS);
+    assertFalse(scheduler.isIdleNow());
+    assertEquals(SECONDS.toMillis(30), scheduler.now(MILLISECONDS));
+    assertEquals(0, action.count());
+
+    delegate.triggerActions();
+    assertEquals(1, action.count());
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void virtualTimeDoesNotSkipToPeriodicWork() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().virtualTime(true).build());
+    CountingRunnable action = new CountingRunnable();
+    scheduler.createWorker().schedulePeriodically(action, 1, 1, SECONDS);
+    assertTrue(scheduler.isIdleNow());
+    assertFalse(scheduler.advanceTimeToNext());
+    assertEquals(0, action.count());
+  }
+
+  @Test public void virtualTimeAdvanceRunsDueWork() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().virtualTime(true).build());
+    CountingRunnable periodic = new CountingRunnable();
+    CountingRunnable delayed = new CountingRunnable();
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedulePeriodically(periodic, 1, 1, SECONDS);
+    worker.schedule(delayed, 5, SECONDS);
+
+    scheduler.advanceTimeBy(3, SECONDS);
+    delegate.triggerActions();
+    assertEquals(3, periodic.count());
+    assertEquals(0, delayed.count());
+
+    assertTrue(scheduler.advanceTimeToNext());
+    delegate.triggerActions();
+    assertEquals(5, periodic.count());
+    assertEquals(1, delayed.count());
+    assertEquals(5, scheduler.now(SECONDS));
+  }
+
+  @Test public void virtualTimeRunsDelayedWorkInRealTime() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().virtualTime(true).build());
+    CountingRunnable action = new CountingRunnable();
+    scheduler.scheduleDirect(action, 1, SECONDS);
+    delegate.advanceTimeBy(1, SECONDS);
+    assertEquals(1, action.count());
+    assertEquals(1, idleCount.get());
+  }
+
+  @Test public void virtualTimeDisposedWorkIsNotSkippedTo() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().virtualTime(true).build());
+    CountingRunnable action = new CountingRunnable();
+    scheduler.createWorker().schedule(action, 30, SECONDS).dispose();
+    assertTrue(scheduler.isIdleNow());
+    assertEquals(0, scheduler.now(SECONDS));
+    delegate.advanceTimeBy(30, SECONDS);
+    assertEquals(0, action.count());
+  }
+
+  @Test public void advanceTimeWithoutVirtualTimeFails() {
+    try {
+      scheduler.advanceTimeBy(1, SECONDS);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Virtual time not enabled", e.getMessage());
+    }
+  }
+
+  @Test public void compressTimeDividesDelays() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().compressTime(10).build());
+    CountingRunnable delayed = new CountingRunnable();
+    CountingRunnable periodic = new CountingRunnable();
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(delayed, 10, SECONDS);
+    worker.schedulePeriodically(periodic, 10, 10, SECONDS);
+    delegate.advanceTimeBy(999, MILLISECONDS);
+    assertEquals(0, delayed.count());
+    assertEquals(0, periodic.count());
+
+    delegate.advanceTimeBy(1, MILLISECONDS);
+    assertEquals(1, delayed.count());
+    assertEquals(1, periodic.count());
+    delegate.advanceTimeBy(2, SECONDS);
+    assertEquals(3, periodic.count());
+  }
+
+  @Test public void compressTimeScalesNow() {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().compressTime(10).build());
+    delegate.advanceTimeBy(1, SECONDS);
+    assertEquals(10, scheduler.now(SECONDS));
+    assertEquals(10, scheduler.createWorker().now(SECONDS));
+  }
+
+  @Test public void traceRecordsWorkAndTransitions() throws IOException {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().trace(64).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    worker.schedule(new CountingRunnable(), 1, SECONDS).dispose();
+    delegate.triggerActions();
+
+    StringWriter writer = new StringWriter();
+    scheduler.writeTrace(writer);
+    String trace = writer.toString();
+    String label = CountingRunnable.class.getName();
+    assertTrue(trace, trace.startsWith("{\"traceEvents\":["));
+    assertTrue(trace, trace.contains("{\"name\":\"schedule " + label + "\",\"cat\":\"Bob\""));
+    assertTrue(trace, trace.contains("{\"name\":\"dispose " + label + "\""));
+    assertTrue(trace, trace.contains("{\"name\":\"" + label + "\",\"cat\":\"Bob\",\"ph\":\"B\""));
+    assertTrue(trace, trace.contains("{\"name\":\"" + label + "\",\"cat\":\"Bob\",\"ph\":\"E\""));
+    assertTrue(trace, trace.contains("{\"name\":\"busy\""));
+    assertTrue(trace, trace.contains("{\"name\":\"idle\""));
+    assertTrue(trace, trace.contains("{\"name\":\"thread_name\",\"ph\":\"M\""));
+    assertTrue(trace, trace.endsWith("]}\n"));
+  }
+
+  @Test public void traceKeepsMostRecentEvents() throws IOException {
+    IdlingResourceScheduler scheduler =
+        wrapWithCallback(new IdlerOptions.Builder().trace(2).build());
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable(), 1, SECONDS);
+    worker.schedule(new CountingRunnable(), 2, SECONDS);
+    worker.schedule(new CountingRunnable(), 3, SECONDS);
+
+    StringWriter writer = new StringWriter();
+    scheduler.writeTrace(writer);
+    String trace = writer.toString();
+    assertEquals(trace, 2, trace.split("\"cat\"").length - 1);
+    assertTrue(trace, trace.contains("\"args\":{\"task\":3}"));
+    assertFalse(trace, trace.contains("\"args\":{\"task\":1}"));
+  }
+
+  @Test public void writeTraceWithoutTracingFails() throws IOException {
+    try {
+      scheduler.writeTrace(new StringWriter());
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("Tracing not enabled", e.getMessage());
+    }
+  }
+
+  @Test public void awaitIdleReturnsImmediatelyWhenIdle() throws InterruptedException {
+    assertTrue(scheduler.awaitIdle(0, SECONDS));
+  }
+
+  @Test public void awaitIdleTimesOutWhileBusy() throws InterruptedException {
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    assertFalse(scheduler.awaitIdle(10, MILLISECONDS));
+  }
+
+  @Test public void awaitIdleWakesOnTransitionToIdle() throws InterruptedException {
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    AwaitThread thread = new AwaitThread(scheduler);
+    thread.start();
+    thread.awaitParked();
+    delegate.triggerActions();
+    thread.join(SECONDS.toMillis(10));
+    assertTrue(thread.idle);
+  }
+
+  @Test public void awaitIdleThrowsWhenInterrupted() {
+    Scheduler.Worker worker = scheduler.createWorker();
+    worker.schedule(new CountingRunnable());
+    Thread.currentThread().interrupt();
+    try {
+      scheduler.awaitIdle(10, SECONDS);
+      fail();
+    } catch (InterruptedException ignored) {
+    }
+  }
+
+  @Test public void awaitAllIdleWaitsForEveryScheduler() throws InterruptedException {
+    TestScheduler otherDelegate = new TestScheduler();
+    IdlingResourceScheduler other = Rx3Idler.wrap(otherDelegate, "Other");
+    scheduler.createWorker().schedule(new CountingRunnable());
+    other.createWorker().schedule(new CountingRunnable());
+    assertFalse(IdlingResourceScheduler.awaitAllIdle(10, MILLISECONDS, scheduler, other));
+
+    delegate.triggerActions();
+    assertFalse(IdlingResourceScheduler.awaitAllIdle(10, MILLISECONDS, scheduler, other));
+
+    otherDelegate.triggerActions();
+    assertTrue(IdlingResourceScheduler.awaitAllIdle(0, SECONDS, scheduler, other));
+  }
+
   @Test public void finishingWorkWithoutRegisteredCallbackDoesNotCrash() {
     IdlingResourceScheduler scheduler = Rx3Idler.wrap(delegate, "Bob");
     Scheduler.Worker worker = scheduler.createWorker();
@@ -115,6 +751,24 @@ public final class DelegatingIdlingResourceSchedulerTest {
     delegate.triggerActions();
   }
 
+  private IdlingResourceScheduler wrapWithCallback(IdlerOptions options) {
+    IdlingResourceScheduler scheduler = Rx3Idler.wrap(delegate, "Bob", options);
+    scheduler.registerIdleTransitionCallback(idleCount::incrementAndGet);
+    return scheduler;
+  }
+
+  private static BusyPolicy fixedPolicy(BusyPolicy.Busy busy) {
+    return (task, delayNanos, periodNanos) -> busy;
+  }
+
+  private static void assertTaskCounts(IdlerMetrics metrics, int queued, int running, int delayed,
+      int periodic) {
+    assertEquals(queued, metrics.queuedTasks());
+    assertEquals(running, metrics.runningTasks());
+    assertEquals(delayed, metrics.delayedTasks());
+    assertEquals(periodic, metrics.periodicTasks());
+  }
+
   private void assertBusy() {
     assertFalse(scheduler.isIdleNow());
   }
@@ -123,4 +777,42 @@ public final class DelegatingIdlingResourceSchedulerTest {
     assertTrue(scheduler.isIdleNow());
     assertEquals(count, idleCount.get());
   }
+
+  /** Records whether its scheduler reported idle while it was running. */
+  private static final class IdleCheckingRunnable implements Runnable {
+    private final IdlingResourceScheduler scheduler;
+    volatile boolean idleWhileRunning;
+
+    IdleCheckingRunnable(IdlingResourceScheduler scheduler) {
+      this.scheduler = scheduler;
+    }
+
+    @Override public void run() {
+      idleWhileRunning = scheduler.isIdleNow();
+    }
+  }
+
+  /** Waits for a scheduler to become idle and exposes when it has parked. */
+  private static final class AwaitThread extends Thread {
+    private final IdlingResourceScheduler scheduler;
+    volatile boolean idle;
+
+    AwaitThread(IdlingResourceScheduler scheduler) {
+      this.scheduler = scheduler;
+    }
+
+    @Override public void run() {
+      try {
+        idle = scheduler.awaitIdle(10, SECONDS);
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    void awaitParked() throws InterruptedException {
+      while (getState() != State.TIMED_WAITING) {
+        Thread.sleep(1);
+      }
+    }
+  }
 }
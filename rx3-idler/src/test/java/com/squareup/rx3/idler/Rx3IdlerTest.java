@@ -1,9 +1,18 @@
 package com.squareup.rx3.idler;
 
+import androidx.test.espresso.IdlingRegistry;
+import androidx.test.espresso.IdlingResource;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.functions.Supplier;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 import io.reactivex.rxjava3.schedulers.TestScheduler;
+import io.reactivex.rxjava3.subjects.PublishSubject;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public final class Rx3IdlerTest {
@@ -14,6 +23,12 @@ public final class Rx3IdlerTest {
     } catch (NullPointerException e) {
       assertEquals("name == null", e.getMessage());
     }
+    try {
+      Rx3Idler.create("Bob", null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("options == null", e.getMessage());
+    }
   }
 
   @Test public void nullWrapArgumentsFails() {
@@ -29,5 +44,160 @@ public final class Rx3IdlerTest {
     } catch (NullPointerException e) {
       assertEquals("name == null", e.getMessage());
     }
+    try {
+      Rx3Idler.wrap(new TestScheduler(), "Bob", null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("options == null", e.getMessage());
+    }
+  }
+
+  @Test public void scheduleHandlerNullNameFails() {
+    try {
+      Rx3Idler.scheduleHandler(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+  }
+
+  @Test public void scheduleHandlerRegistersGroup() {
+    Rx3Idler.scheduleHandler("Work");
+    IdlingRegistry registry = IdlingRegistry.getInstance();
+    IdlingResource registered = null;
+    for (IdlingResource resource : registry.getResources()) {
+      if (resource.getName().equals("Work")) {
+        registered = resource;
+      }
+    }
+    try {
+      assertTrue(registered instanceof IdlingResourceGroup);
+      assertTrue(registered.isIdleNow());
+    } finally {
+      registry.unregister(registered);
+    }
+  }
+
+  @Test public void transformerNullNameFails() {
+    try {
+      Rx3Idler.transformer(null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+  }
+
+  @Test public void transformersShareRegisteredGroup() {
+    PublishSubject<String> first = PublishSubject.create();
+    PublishSubject<String> second = PublishSubject.create();
+    first.compose(Rx3Idler.transformer("Network")).subscribe();
+    second.compose(Rx3Idler.transformer("Network")).subscribe();
+    IdlingResource registered = registeredNamed("Network");
+    try {
+      assertTrue(registered instanceof IdlingResourceGroup);
+      assertFalse(registered.isIdleNow());
+      first.onComplete();
+      assertFalse(registered.isIdleNow());
+      second.onComplete();
+      assertTrue(registered.isIdleNow());
+    } finally {
+      IdlingRegistry.getInstance().unregister(registered);
+    }
+  }
+
+  @Test public void transformerReplacesResourceWithSameName() {
+    IdlingResourceScheduler scheduler = Rx3Idler.wrap(new TestScheduler(), "Network");
+    IdlingRegistry.getInstance().register(scheduler);
+    Rx3Idler.transformer("Network");
+    IdlingResource registered = registeredNamed("Network");
+    try {
+      assertTrue(registered instanceof IdlingResourceGroup);
+      assertFalse(IdlingRegistry.getInstance().getResources().contains(scheduler));
+    } finally {
+      IdlingRegistry.getInstance().unregister(registered);
+    }
+  }
+
+  @Test public void installSubscribeHooksNullArgumentsFail() {
+    SubscribeFilter filter = new SubscribeFilter.Builder().sourcePackage("com.example").build();
+    try {
+      Rx3Idler.installSubscribeHooks(null, filter);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("name == null", e.getMessage());
+    }
+    try {
+      Rx3Idler.installSubscribeHooks("Bob", null);
+      fail();
+    } catch (NullPointerException e) {
+      assertEquals("filter == null", e.getMessage());
+    }
+  }
+
+  @Test public void installSubscribeHooksRegistersGroup() {
+    Rx3Idler.installSubscribeHooks("Sources", new SubscribeFilter.Builder()
+        .sourceClass(PublishSubject.class)
+        .build());
+    IdlingResource registered = registeredNamed("Sources");
+    try {
+      assertTrue(registered instanceof IdlingResourceGroup);
+      PublishSubject<String> subject = PublishSubject.create();
+      subject.subscribe();
+      assertFalse(registered.isIdleNow());
+      subject.onComplete();
+      assertTrue(registered.isIdleNow());
+    } finally {
+      RxJavaPlugins.reset();
+      IdlingRegistry.getInstance().unregister(registered);
+    }
+  }
+
+  @Test public void createReplacesResourceWithSameName() throws Throwable {
+    Function<Supplier<Scheduler>, Scheduler> create = Rx3Idler.create("Bob");
+    Scheduler first = create.apply(TestScheduler::new);
+    Scheduler second = create.apply(TestScheduler::new);
+    IdlingRegistry registry = IdlingRegistry.getInstance();
+    try {
+      assertFalse(registry.getResources().contains(first));
+      assertTrue(registry.getResources().contains(second));
+    } finally {
+      registry.unregister((IdlingResource) second);
+    }
+  }
+
+  @Test public void shutdownUnregistersAndStartRegistersAgain() throws Throwable {
+    Scheduler scheduler = Rx3Idler.create("Bob").apply(TestScheduler::new);
+    IdlingRegistry registry = IdlingRegistry.getInstance();
+    try {
+      assertTrue(registry.getResources().contains(scheduler));
+      scheduler.shutdown();
+      assertFalse(registry.getResources().contains(scheduler));
+      scheduler.start();
+      assertTrue(registry.getResources().contains(scheduler));
+    } finally {
+      registry.unregister((IdlingResource) scheduler);
+    }
+  }
+
+  @Test public void createWithGroupRegistersGroup() throws Throwable {
+    IdlingResourceGroup group = new IdlingResourceGroup("Group");
+    IdlerOptions options = new IdlerOptions.Builder().group(group).build();
+    Scheduler scheduler = Rx3Idler.create("Bob", options).apply(TestScheduler::new);
+    IdlingRegistry registry = IdlingRegistry.getInstance();
+    try {
+      assertTrue(registry.getResources().contains(group));
+      assertFalse(registry.getResources().contains(scheduler));
+    } finally {
+      registry.unregister(group);
+    }
+  }
+
+  private static IdlingResource registeredNamed(String name) {
+    for (IdlingResource resource : IdlingRegistry.getInstance().getResources()) {
+      if (resource.getName().equals(name)) {
+        return resource;
+      }
+    }
+    return null;
   }
 }
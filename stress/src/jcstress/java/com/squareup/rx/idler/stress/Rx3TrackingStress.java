@@ -0,0 +1,288 @@
+package com.squareup.rx.idler.stress;
+
+import com.squareup.rx3.idler.IdleListener;
+import com.squareup.rx3.idler.IdlerOptions;
+import com.squareup.rx3.idler.Rx3Tracking;
+import com.squareup.rx3.idler.TrackingScheduler;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.disposables.Disposable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Races on the RxJava 3.x tracking scheduler's per-task state machine. The delegate only captures
+ * work so that the actors can run and dispose it on threads of their choosing.
+ */
+public final class Rx3TrackingStress {
+  static final IdlerOptions STRIPED = new IdlerOptions.Builder().stripedCounter(true).build();
+
+  private Rx3TrackingStress() {
+  }
+
+  /** The result is idle, idle notifications, and runs of the task. */
+  @JCStressTest
+  @Outcome(id = "1, 1, 0", expect = ACCEPTABLE, desc = "Disposed before it ran.")
+  @Outcome(id = "1, 1, 1", expect = ACCEPTABLE, desc = "Ran before or while it was disposed.")
+  @Outcome(expect = FORBIDDEN, desc = "Count leaked, went negative, or an idle was lost.")
+  @State
+  public static class RunVsDispose {
+    final CapturingScheduler delegate = new CapturingScheduler();
+    final TrackingScheduler scheduler = Rx3Tracking.wrap(delegate, "Stress");
+    final CountingIdleListener listener = new CountingIdleListener(scheduler);
+    final CountingRunnable task = new CountingRunnable();
+    final Disposable disposable = scheduler.scheduleDirect(task);
+
+    @Actor public void runTask() {
+      delegate.task.run();
+    }
+
+    @Actor public void dispose() {
+      disposable.dispose();
+    }
+
+    @Arbiter public void check(III_Result r) {
+      r.r1 = scheduler.isIdleNow() ? 1 : 0;
+      r.r2 = listener.count.get();
+      r.r3 = task.count;
+    }
+  }
+
+  /**
+   * A periodic task which has already run once is run again while it is disposed. The result is
+   * idle, idle notifications, and runs of the task after the first.
+   */
+  @JCStressTest
+  @Outcome(id = "1, 0, 0", expect = ACCEPTABLE, desc = "Disposed before it ran again.")
+  @Outcome(id = "1, 1, 1", expect = ACCEPTABLE, desc = "Ran again before or while disposed.")
+  @Outcome(expect = FORBIDDEN, desc = "Count leaked, went negative, or an idle was lost.")
+  @State
+  public static class PeriodicRunVsDispose {
+    final CapturingScheduler delegate = new CapturingScheduler();
+    final TrackingScheduler scheduler = Rx3Tracking.wrap(delegate, "Stress");
+    final CountingRunnable task = new CountingRunnable();
+    final Disposable disposable = scheduler.schedulePeriodicallyDirect(task, 0, 1, DAYS);
+    final CountingIdleListener listener;
+
+    public PeriodicRunVsDispose() {
+      delegate.task.run();
+      task.count = 0;
+      listener = new CountingIdleListener(scheduler);
+    }
+
+    @Actor public void runTask() {
+      delegate.task.run();
+    }
+
+    @Actor public void dispose() {
+      disposable.dispose();
+    }
+
+    @Arbiter public void check(III_Result r) {
+      r.r1 = scheduler.isIdleNow() ? 1 : 0;
+      r.r2 = listener.count.get();
+      r.r3 = task.count;
+    }
+  }
+
+  /** The result is idle and idle notifications. */
+  @JCStressTest
+  @Outcome(id = "1, 0", expect = ACCEPTABLE, desc = "Worker disposed before the schedule.")
+  @Outcome(id = "1, 1", expect = ACCEPTABLE, desc = "Scheduled work released by the dispose.")
+  @Outcome(expect = FORBIDDEN, desc = "Count leaked, went negative, or an idle was lost.")
+  @State
+  public static class WorkerDisposeVsSchedule {
+    final TrackingScheduler scheduler = Rx3Tracking.wrap(new CapturingScheduler(), "Stress");
+    final CountingIdleListener listener = new CountingIdleListener(scheduler);
+    final Scheduler.Worker worker = scheduler.createWorker();
+
+    @Actor public void schedule() {
+      worker.schedule(new CountingRunnable());
+    }
+
+    @Actor public void dispose() {
+      worker.dispose();
+    }
+
+    @Arbiter public void check(II_Result r) {
+      r.r1 = scheduler.isIdleNow() ? 1 : 0;
+      r.r2 = listener.count.get();
+    }
+  }
+
+  /**
+   * A listener set on one thread while the last task finishes on another, as Espresso does when it
+   * registers its callback and then polls. The result is whether the registering thread then saw
+   * idle, and idle notifications.
+   */
+  @JCStressTest
+  @Outcome(id = "0, 1", expect = ACCEPTABLE, desc = "Saw busy, then was notified.")
+  @Outcome(id = "1, 1", expect = ACCEPTABLE, desc = "Saw idle and was also notified.")
+  @Outcome(id = "1, 0", expect = ACCEPTABLE, desc = "Went idle before the listener was set.")
+  @Outcome(id = "0, 0", expect = FORBIDDEN, desc = "Saw busy but the idle was never reported.")
+  @Outcome(expect = FORBIDDEN, desc = "Unexpected state.")
+  @State
+  public static class ListenerVisibility {
+    final CapturingScheduler delegate = new CapturingScheduler();
+    final TrackingScheduler scheduler = Rx3Tracking.wrap(delegate, "Stress");
+    final AtomicInteger count = new AtomicInteger();
+    final IdleListener listener = new IdleListener() {
+      @Override public void onIdle() {
+        count.incrementAndGet();
+      }
+    };
+
+    public ListenerVisibility() {
+      scheduler.scheduleDirect(new CountingRunnable());
+    }
+
+    @Actor public void register(II_Result r) {
+      scheduler.setIdleListener(listener);
+      r.r1 = scheduler.isIdleNow() ? 1 : 0;
+    }
+
+    @Actor public void runTask() {
+      delegate.task.run();
+    }
+
+    @Arbiter public void check(II_Result r) {
+      r.r2 = count.get();
+    }
+  }
+
+  /** As {@link RunVsDispose}, with the busy count split across stripes. */
+  @JCStressTest
+  @Outcome(id = "1, 1, 0", expect = ACCEPTABLE, desc = "Disposed before it ran.")
+  @Outcome(id = "1, 1, 1", expect = ACCEPTABLE, desc = "Ran before or while it was disposed.")
+  @Outcome(expect = FORBIDDEN, desc = "Count leaked, went negative, or an idle was lost.")
+  @State
+  public static class StripedRunVsDispose {
+    final CapturingScheduler delegate = new CapturingScheduler();
+    final TrackingScheduler scheduler = Rx3Tracking.wrap(delegate, "Stress", STRIPED);
+    final CountingIdleListener listener = new CountingIdleListener(scheduler);
+    final CountingRunnable task = new CountingRunnable();
+    final Disposable disposable = scheduler.scheduleDirect(task);
+
+    @Actor public void runTask() {
+      delegate.task.run();
+    }
+
+    @Actor public void dispose() {
+      disposable.dispose();
+    }
+
+    @Arbiter public void check(III_Result r) {
+      r.r1 = scheduler.isIdleNow() ? 1 : 0;
+      r.r2 = listener.count.get();
+      r.r3 = task.count;
+    }
+  }
+
+  /**
+   * A task is scheduled and the scheduler polled while the only other task finishes on another
+   * thread, with the busy count split across stripes. The two may share a stripe, so the poll must
+   * not miss the new task while the other one leaves the total. The result is whether the
+   * scheduling thread saw idle, whether the scheduler is idle at the end, and idle notifications.
+   */
+  @JCStressTest
+  @Outcome(id = "0, 0, 0", expect = ACCEPTABLE, desc = "Scheduled before the other task finished.")
+  @Outcome(id = "0, 0, 1", expect = ACCEPTABLE, desc = "Scheduled after the other task finished.")
+  @Outcome(expect = FORBIDDEN, desc = "Saw idle with work scheduled, or the count leaked.")
+  @State
+  public static class StripedScheduleVsIsIdleNow {
+    final CapturingScheduler delegate = new CapturingScheduler();
+    final TrackingScheduler scheduler = Rx3Tracking.wrap(delegate, "Stress", STRIPED);
+    final CountingIdleListener listener = new CountingIdleListener(scheduler);
+    final Runnable first;
+
+    public StripedScheduleVsIsIdleNow() {
+      scheduler.scheduleDirect(new CountingRunnable());
+      first = delegate.task;
+    }
+
+    @Actor public void schedule(III_Result r) {
+      scheduler.scheduleDirect(new CountingRunnable());
+      r.r1 = scheduler.isIdleNow() ? 1 : 0;
+    }
+
+    @Actor public void runTask() {
+      first.run();
+    }
+
+    @Arbiter public void check(III_Result r) {
+      r.r2 = scheduler.isIdleNow() ? 1 : 0;
+      r.r3 = listener.count.get();
+    }
+  }
+
+  static final class CountingRunnable implements Runnable {
+    int count;
+
+    @Override public void run() {
+      count++;
+    }
+  }
+
+  static final class CountingIdleListener implements IdleListener {
+    final AtomicInteger count = new AtomicInteger();
+
+    CountingIdleListener(TrackingScheduler scheduler) {
+      scheduler.setIdleListener(this);
+    }
+
+    @Override public void onIdle() {
+      count.incrementAndGet();
+    }
+  }
+
+  /** Holds on to the last task scheduled rather than running it. */
+  static final class CapturingScheduler extends Scheduler {
+    Runnable task;
+
+    @Override public Worker createWorker() {
+      return new CapturingWorker(this);
+    }
+
+    @Override public Disposable scheduleDirect(Runnable run, long delay, TimeUnit unit) {
+      task = run;
+      return Disposable.empty();
+    }
+
+    @Override
+    public Disposable schedulePeriodicallyDirect(Runnable run, long initialDelay, long period,
+        TimeUnit unit) {
+      return scheduleDirect(run, initialDelay, unit);
+    }
+  }
+
+  static final class CapturingWorker extends Scheduler.Worker {
+    private final CapturingScheduler scheduler;
+    private volatile boolean disposed;
+
+    CapturingWorker(CapturingScheduler scheduler) {
+      this.scheduler = scheduler;
+    }
+
+    @Override public Disposable schedule(Runnable run, long delay, TimeUnit unit) {
+      return scheduler.scheduleDirect(run, delay, unit);
+    }
+
+    @Override public void dispose() {
+      disposed = true;
+    }
+
+    @Override public boolean isDisposed() {
+      return disposed;
+    }
+  }
+}
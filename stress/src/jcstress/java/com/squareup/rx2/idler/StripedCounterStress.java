@@ -0,0 +1,81 @@
+package com.squareup.rx2.idler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.III_Result;
+
+import static org.openjdk.jcstress.annotations.Expect.ACCEPTABLE;
+import static org.openjdk.jcstress.annotations.Expect.FORBIDDEN;
+
+/**
+ * Races on one stripe of the RxJava 2.x striped counter. Each thread must see the total count its
+ * own increment as soon as the increment returns, including when another thread is moving the
+ * stripe away from zero at the same time.
+ */
+public final class StripedCounterStress {
+  private StripedCounterStress() {
+  }
+
+  /** The result is the total each actor saw after its increment, and the final total. */
+  @JCStressTest
+  @Outcome(id = "1, 1, 1", expect = ACCEPTABLE, desc = "One thread counted the stripe.")
+  @Outcome(id = "1, 2, 1", expect = ACCEPTABLE, desc = "Both published, one undid it after.")
+  @Outcome(id = "2, 1, 1", expect = ACCEPTABLE, desc = "Both published, one undid it after.")
+  @Outcome(id = "2, 2, 1", expect = ACCEPTABLE, desc = "Both published, one undid it after.")
+  @Outcome(expect = FORBIDDEN, desc = "Saw idle with work counted, or the total leaked.")
+  @State
+  public static class IncrementVsIncrement {
+    final AtomicInteger total = new AtomicInteger();
+    final StripedCounter counter = new StripedCounter(total, 2);
+
+    @Actor public void first(III_Result r) {
+      counter.increment(0);
+      r.r1 = total.get();
+    }
+
+    @Actor public void second(III_Result r) {
+      counter.increment(0);
+      r.r2 = total.get();
+    }
+
+    @Arbiter public void check(III_Result r) {
+      r.r3 = total.get();
+    }
+  }
+
+  /**
+   * The stripe is busy once and is taken to zero while another increment arrives. The result is
+   * whether the decrement reported idle, the total the incrementing actor saw, and the final total.
+   */
+  @JCStressTest
+  @Outcome(id = "0, 1, 1", expect = ACCEPTABLE, desc = "Increment first, the stripe stayed busy.")
+  @Outcome(id = "0, 2, 1", expect = ACCEPTABLE, desc = "Increment published before the retract.")
+  @Outcome(id = "1, 1, 1", expect = ACCEPTABLE, desc = "Decrement first, then busy again.")
+  @Outcome(expect = FORBIDDEN, desc = "Saw idle with work counted, or the total leaked.")
+  @State
+  public static class DecrementVsIncrement {
+    final AtomicInteger total = new AtomicInteger();
+    final StripedCounter counter = new StripedCounter(total, 2);
+
+    public DecrementVsIncrement() {
+      counter.increment(0);
+    }
+
+    @Actor public void decrement(III_Result r) {
+      r.r1 = counter.decrement(0) ? 1 : 0;
+    }
+
+    @Actor public void increment(III_Result r) {
+      counter.increment(0);
+      r.r2 = total.get();
+    }
+
+    @Arbiter public void check(III_Result r) {
+      r.r3 = total.get();
+    }
+  }
+}